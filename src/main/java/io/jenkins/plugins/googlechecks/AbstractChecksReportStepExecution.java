@@ -0,0 +1,407 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import io.jenkins.plugins.checks.api.ChecksConclusion;
+import io.jenkins.plugins.googlechecks.models.GoogleChecksOperation;
+import io.jenkins.plugins.googlechecks.models.GoogleChecksReport;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ Shared polling logic between uploadToChecks and awaitChecksReport: both wait for an analysis operation
+ to be done, then fetch the report and validate it against the severity threshold.
+ Everything needed to poll again is kept in serializable fields so that the wait survives a restart.
+ The operation is cancelled when the step times out or is aborted, ChecksOperationReaper covers the other cases.
+ */
+public abstract class AbstractChecksReportStepExecution extends AbstractStepExecutionImpl {
+    private static final Logger LOGGER = Logger.getLogger(AbstractChecksReportStepExecution.class.getName());
+
+    private static final long serialVersionUID = 1L;
+    protected static final int DEFAULT_TIMEOUT_MINUTES = 30;
+    // non-final for tests and the script console
+    static int CHECK_OPERATION_INTERVAL = SystemProperties.getInteger(AbstractChecksReportStepExecution.class.getName() + ".checkOperationInterval", 10); // seconds
+
+    private transient volatile ScheduledFuture<?> task;
+    private transient volatile Future<?> inFlight;
+    private transient volatile boolean stopped;
+    protected long end;
+    protected long timeoutMillis = TimeUnit.MINUTES.toMillis(DEFAULT_TIMEOUT_MINUTES);
+    protected String operationId;
+    protected transient GoogleChecks checks;
+
+    protected String baseUrl;
+    protected String projectId;
+    protected String accountId;
+    protected String appId;
+    protected String credentialsId;
+    protected SeverityThreshold severityThreshold;
+    protected FailOn failOn;
+    // JSON of the gating policy, replaces severityThreshold when set
+    protected String policy;
+    // name of the check published to the SCM, null unless publishChecks is set
+    protected String checkName;
+    // file the annotations of the published check point to
+    protected String checkPath;
+    // set when the step runs in a withGoogleChecks block
+    protected ChecksSession session;
+    // timings and size of the upload, for the returned ChecksResult
+    protected long uploadedAt;
+    protected long uploadedBytes;
+    protected long uploadMillis;
+    private transient ChecksResult result;
+
+    protected AbstractChecksReportStepExecution(@Nonnull StepContext context) {
+        super(context);
+    }
+
+    protected GoogleChecks createChecks() {
+        return new GoogleChecks(baseUrl, projectId, accountId, appId);
+    }
+
+    /*
+     Session of the enclosing withGoogleChecks block, if any.
+     */
+    static ChecksSession sessionOf(StepContext context) {
+        try {
+            return context.get(ChecksSession.class);
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (IOException x) {
+            LOGGER.log(Level.WARNING, null, x);
+            return null;
+        }
+    }
+
+    /*
+     Authenticates with the session of the enclosing block when the step uses its credentials, on its own otherwise.
+     */
+    protected void authenticate() throws IOException {
+        if (session != null && Objects.equals(session.getCredentialsId(), credentialsId)) {
+            checks.authenticate(session.getClient(), getRun());
+        } else {
+            checks.authenticate(credentialsId, getRun());
+        }
+    }
+
+    protected TaskListener getListener() {
+        TaskListener listener;
+        try {
+            listener = getContext().get(TaskListener.class);
+        } catch (Exception x) {
+            LOGGER.log(Level.WARNING, null, x);
+            listener = TaskListener.NULL;
+        }
+
+        return listener;
+    }
+
+    /*
+     Runs blocking calls to the Checks API on ChecksExecutors, any failure fails the step.
+     */
+    protected void submit(Callable<?> work) {
+        inFlight = ChecksExecutors.get().submit(() -> {
+            try {
+                work.call();
+            } catch (Exception e) {
+                // a failure doesn't cancel the operation right away: the reaper does it once the build is over
+                if (!stopped) {
+                    publishFailed(ChecksConclusion.FAILURE, "Failed: " + e.getMessage());
+                }
+                getContext().onFailure(e);
+            }
+        });
+    }
+
+    protected boolean isStopped() {
+        return stopped;
+    }
+
+    protected Run<?, ?> getRun() {
+        try {
+            return getContext().get(Run.class);
+        } catch (Exception x) {
+            LOGGER.log(Level.WARNING, null, x);
+            return null;
+        }
+    }
+
+    protected static long toTimeoutMillis(Integer timeoutMinutes) {
+        if (timeoutMinutes != null && timeoutMinutes <= 0) {
+            throw new IllegalArgumentException("timeoutMinutes must be positive, got " + timeoutMinutes);
+        }
+        // read when the step starts so that tests can shorten the timeout of their own builds
+        long override = SystemProperties.getLong(AbstractChecksReportStepExecution.class.getName() + ".timeoutMillis", 0L);
+        if (override > 0) {
+            return override;
+        }
+        return TimeUnit.MINUTES.toMillis(timeoutMinutes == null ? DEFAULT_TIMEOUT_MINUTES : timeoutMinutes);
+    }
+
+    static String formatTimeout(long millis) {
+        if (millis % TimeUnit.MINUTES.toMillis(1) == 0) {
+            return TimeUnit.MILLISECONDS.toMinutes(millis) + " minute(s)";
+        }
+        if (millis % TimeUnit.SECONDS.toMillis(1) == 0) {
+            return TimeUnit.MILLISECONDS.toSeconds(millis) + " second(s)";
+        }
+        return millis + " ms";
+    }
+
+    protected void waitReport(long now) {
+        waitReport(now, 0);
+    }
+
+    private void waitReport(long now, long firstPollDelayMillis) {
+        Run<?, ?> run = getRun();
+        ChecksOperationTracker.get().track(new ChecksOperationTracker.TrackedOperation(baseUrl, projectId, accountId, appId,
+                operationId, credentialsId, run == null ? null : run.getExternalizableId(), end));
+        publishProgress(ChecksStatusPublisher.Stage.ANALYZING);
+        schedulePoll(getListener(), firstPollDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void schedulePoll(TaskListener listener, long delay, TimeUnit unit) {
+        if (stopped) {
+            return;
+        }
+        // the timer only dispatches the poll, nothing blocks on it
+        task = Timer.get().schedule(() -> poll(listener), delay, unit);
+    }
+
+    private void poll(TaskListener listener) {
+        if (stopped) {
+            return;
+        }
+        listener.getLogger().printf("Checking on operationId=%s\n", operationId);
+        // with the HTTP/2 engine, no thread waits for the response
+        inFlight = checks.checkOperationAsync(operationId).whenComplete((response, error) -> {
+            if (stopped) {
+                return;
+            }
+            if (error != null) {
+                publishFailed(ChecksConclusion.FAILURE, "Failed: " + error.getMessage());
+                getContext().onFailure(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                return;
+            }
+            submit(() -> {
+                onOperation(listener, response);
+                return null;
+            });
+        });
+    }
+
+    private void onOperation(TaskListener listener, GoogleChecksOperation response) throws IOException {
+        long now = System.currentTimeMillis();
+        if (response.done != null && response.done) {
+            untrack();
+            Boolean isValid = isValidReport(listener, response, severityThreshold);
+            if (failOn == FailOn.ALL) {
+                if (isValid) {
+                    getContext().onSuccess(result);
+                } else {
+                    getContext().onFailure(new RuntimeException("Report has errors"));
+                }
+            } else {
+                getContext().onSuccess(result);
+            }
+        } else if (end < now) {
+            // the operation has no report yet, don't leave it running for nobody
+            listener.getLogger().printf("Timed out after %s waiting for operationId=%s, cancelling it\n", formatTimeout(timeoutMillis), operationId);
+            cancelOperation(listener);
+            publishFailed(ChecksConclusion.TIME_OUT, "Timed out after " + formatTimeout(timeoutMillis));
+            getContext().onFailure(new AbortException("Timed out waiting for the Checks report"));
+        } else {
+            schedulePoll(listener, CHECK_OPERATION_INTERVAL, TimeUnit.SECONDS);
+        }
+    }
+
+    private void cancelOperation(TaskListener listener) {
+        try {
+            checks.cancelOperation(operationId);
+            untrack();
+        } catch (IOException | RuntimeException e) {
+            // still tracked, the reaper will try again
+            listener.getLogger().printf("Failed to cancel operationId=%s: %s\n", operationId, e);
+        }
+    }
+
+    private void untrack() {
+        ChecksOperationTracker.get().untrack(String.format("accounts/%s/apps/%s/operations/%s", accountId, appId, operationId));
+    }
+
+    public Boolean isValidReport(TaskListener listener, GoogleChecksOperation operation) throws IOException {
+        return isValidReport(listener, operation, SeverityThreshold.PRIORITY);
+    }
+
+    public Boolean isValidReport(TaskListener listener, GoogleChecksOperation operation, SeverityThreshold severityThreshold) throws IOException {
+        listener.getLogger().printf("Report console URL: %s\n", operation.response.resultsUri);
+        String reportId = GoogleChecks.getReportIdFromName(operation.response.name);
+        GoogleChecksReport report = checks.getReport(reportId);
+        ChecksReportCache.get().put(operation.response.name, report);
+        recordResults(report);
+        boolean valid = policy != null
+                ? isValidReport(listener, report, GatingPolicy.compile(policy))
+                : isValidReport(listener, report, severityThreshold);
+        updateDashboard(report, operation.response.resultsUri, valid);
+        publishCompleted(report, operation.response.resultsUri, valid);
+        Run<?, ?> run = getRun();
+        result = new ChecksResult(accountId, appId, operation.response.name, report, operation.response.resultsUri, valid,
+                uploadedBytes, uploadMillis, uploadedAt == 0 ? 0 : System.currentTimeMillis() - uploadedAt);
+        return valid;
+    }
+
+    private Boolean isValidReport(TaskListener listener, GoogleChecksReport report, SeverityThreshold severityThreshold) {
+        List<String> failingChecks = GoogleChecks.validateReport(report.checks, severityThreshold);
+        if (!failingChecks.isEmpty()) {
+            listener.getLogger().printf("%s issue(s) detected:\n", failingChecks.size());
+            for (String check : failingChecks) {
+                listener.getLogger().println(check);
+            }
+        } else {
+            listener.getLogger().println("No issues detected.");
+        }
+        return failingChecks.isEmpty();
+    }
+
+    private void updateDashboard(GoogleChecksReport report, String resultsUri, boolean valid) {
+        Run<?, ?> run = getRun();
+        if (run != null) {
+            ChecksDashboard.get().update(accountId, appId, run, report, resultsUri, valid);
+        }
+    }
+
+    protected void publishProgress(ChecksStatusPublisher.Stage stage) {
+        Run<?, ?> run = getRun();
+        if (checkName != null && run != null) {
+            ChecksStatusPublisher.get().progress(run, getListener(), checkName, stage, null);
+        }
+    }
+
+    private void publishCompleted(GoogleChecksReport report, String resultsUri, boolean valid) {
+        Run<?, ?> run = getRun();
+        if (checkName != null && run != null) {
+            ChecksStatusPublisher.get().completed(run, getListener(), checkName,
+                    checkPath != null ? checkPath : appId, resultsUri,
+                    report.checks == null ? Collections.emptyList() : report.checks, valid, failOn == FailOn.ALL);
+        }
+    }
+
+    protected void publishFailed(ChecksConclusion conclusion, String message) {
+        Run<?, ?> run = getRun();
+        if (checkName != null && run != null) {
+            ChecksStatusPublisher.get().failed(run, getListener(), checkName, conclusion, message);
+        }
+    }
+
+    /*
+     Name of the check published for an app, so that several apps uploaded by one build get a check each.
+     */
+    protected static String checkNameOf(Boolean publishChecks, String appId) {
+        return Boolean.TRUE.equals(publishChecks) ? String.format("Google Checks (%s)", appId) : null;
+    }
+
+    private void recordResults(GoogleChecksReport report) {
+        Run<?, ?> run = getRun();
+        try {
+            ChecksResultsStore.get().record(accountId, appId, run == null ? "" : run.getParent().getFullName(),
+                    run == null ? 0 : run.getNumber(), report.name, report.checks == null ? Collections.emptyList() : report.checks);
+        } catch (IOException e) {
+            // the build doesn't depend on it
+            LOGGER.log(Level.WARNING, "Failed to record the results of " + report.name, e);
+        }
+    }
+
+    private Boolean isValidReport(TaskListener listener, GoogleChecksReport report, GatingPolicy gatingPolicy) {
+        GatingPolicy.Result result = gatingPolicy.evaluate(report.checks);
+        if (!result.getFailingChecks().isEmpty()) {
+            listener.getLogger().printf("%s issue(s) detected:\n", result.getFailingChecks().size());
+            for (String check : result.getFailingChecks()) {
+                listener.getLogger().println(check);
+            }
+        } else {
+            listener.getLogger().println("No issues detected.");
+        }
+        if (!result.isValid()) {
+            listener.getLogger().println("Gating policy violated:");
+            for (String violation : result.getViolations()) {
+                listener.getLogger().println(violation);
+            }
+        }
+        return result.isValid();
+    }
+
+    /*
+     Loads and compiles the policy of the step before starting, so that an invalid policy fails the step right away.
+     */
+    protected void loadPolicy(String inlinePolicy, String policyFile) throws IOException, InterruptedException {
+        // the workspace is only there inside a node block
+        policy = GatingPolicy.load(inlinePolicy, policyFile, getContext().get(FilePath.class));
+        if (policy != null) {
+            GatingPolicy.compile(policy);
+        }
+    }
+
+    @Override public void stop(@Nonnull Throwable cause) throws Exception {
+        stopped = true;
+        if (task != null) {
+            task.cancel(false);
+        }
+        if (inFlight != null) {
+            inFlight.cancel(false);
+        }
+        if (operationId != null && checks != null) {
+            TaskListener listener = getListener();
+            listener.getLogger().printf("Cancelling operationId=%s\n", operationId);
+            ChecksExecutors.get().submit(() -> cancelOperation(listener));
+        }
+        publishFailed(ChecksConclusion.CANCELED, "Aborted");
+        super.stop(cause);
+    }
+
+    @Override public void onResume() {
+        if (operationId == null) {
+            getContext().onFailure(new IllegalStateException("The upload was interrupted by a restart"));
+            return;
+        }
+        // all the waiting steps resume together, ResumeCoordinator spreads their first polls
+        ResumeCoordinator.get().register(end, credentialsId, getRun(), delay -> submit(() -> {
+            // the client isn't serialized with the execution, so it needs to authenticate again
+            checks = createChecks();
+            authenticate();
+            waitReport(System.currentTimeMillis(), delay);
+            return null;
+        }));
+    }
+}
@@ -0,0 +1,86 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import hudson.AbortException;
+import hudson.model.Job;
+import hudson.model.PermalinkProjectAction;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.queue.Tasks;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.model.Jenkins;
+import jenkins.util.VirtualFile;
+import org.springframework.security.core.Authentication;
+
+import java.io.IOException;
+
+/*
+ Finds the archived artifact to upload: from the current build (e.g. archived by an earlier stage) or from
+ another job, with the permissions of the current build.
+ */
+public final class ArtifactResolver {
+    private ArtifactResolver() {
+    }
+
+    /*
+     build is a build number or a permalink such as lastSuccessfulBuild. Without a job, the artifact comes from
+     the current build; with a job and without a build, from its last successful build.
+     */
+    public static VirtualFile resolve(Run<?, ?> current, String jobName, String build, String path) throws IOException {
+        Run<?, ?> run = resolveRun(current, jobName, build);
+        VirtualFile artifact = run.getArtifactManager().root().child(path);
+        if (!artifact.isFile()) {
+            throw new AbortException(String.format("No artifact %s in %s", path, run.getFullDisplayName()));
+        }
+        return artifact;
+    }
+
+    static Run<?, ?> resolveRun(Run<?, ?> current, String jobName, String build) throws AbortException {
+        if (jobName == null && build == null) {
+            return current;
+        }
+        Authentication authentication = current.getParent() instanceof Queue.Task
+                ? Tasks.getAuthenticationOf2((Queue.Task) current.getParent())
+                : ACL.SYSTEM2;
+        Job<?, ?> job;
+        try (ACLContext ignored = ACL.as2(authentication)) {
+            // null when the job doesn't exist or the build can't see it
+            job = jobName == null ? current.getParent() : Jenkins.get().getItem(jobName, current.getParent(), Job.class);
+        }
+        if (job == null) {
+            throw new AbortException("Unable to find the job " + jobName);
+        }
+        Run<?, ?> run;
+        String id = build == null ? "lastSuccessfulBuild" : build;
+        if (id.matches("\\d+")) {
+            run = job.getBuildByNumber(Integer.parseInt(id));
+        } else {
+            PermalinkProjectAction.Permalink permalink = job.getPermalinks().get(id);
+            if (permalink == null) {
+                throw new AbortException("Unknown build " + id + ", expected a build number or a permalink such as lastSuccessfulBuild");
+            }
+            run = permalink.resolve(job);
+        }
+        if (run == null) {
+            throw new AbortException(String.format("No build %s of %s", id, job.getFullName()));
+        }
+        if (!run.hasPermission2(authentication, Run.ARTIFACTS)) {
+            throw new AbortException(String.format("%s can't read the artifacts of %s", authentication.getName(), run.getFullDisplayName()));
+        }
+        return run;
+    }
+}
@@ -0,0 +1,131 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import com.google.common.collect.ImmutableSet;
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import org.jenkinsci.plugins.workflow.steps.*;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import java.util.Set;
+
+public class AwaitChecksReportStep extends Step {
+    private final ChecksOperationHandle handle;
+
+    @DataBoundSetter
+    private SeverityThreshold severityThreshold = SeverityThreshold.PRIORITY;
+
+    @DataBoundSetter
+    private FailOn failOn;
+
+    @DataBoundSetter
+    private String policy;
+
+    @DataBoundSetter
+    private String policyFile;
+
+    @DataBoundSetter
+    private Integer timeoutMinutes;
+
+    @DataBoundSetter
+    private Boolean publishChecks = false;
+
+    @DataBoundConstructor
+    public AwaitChecksReportStep(ChecksOperationHandle handle) {
+        this.handle = handle;
+    }
+
+    public ChecksOperationHandle getHandle() {
+        return handle;
+    }
+
+    public SeverityThreshold getSeverityThreshold() {
+        return severityThreshold;
+    }
+
+    public void setSeverityThreshold(SeverityThreshold severityThreshold) {
+        this.severityThreshold = severityThreshold;
+    }
+
+    public FailOn getFailOn() {
+        return failOn;
+    }
+
+    public void setFailOn(FailOn failOn) {
+        this.failOn = failOn;
+    }
+
+    public String getPolicy() {
+        return policy;
+    }
+
+    public void setPolicy(String policy) {
+        this.policy = policy;
+    }
+
+    public String getPolicyFile() {
+        return policyFile;
+    }
+
+    public void setPolicyFile(String policyFile) {
+        this.policyFile = policyFile;
+    }
+
+    public Integer getTimeoutMinutes() {
+        return timeoutMinutes;
+    }
+
+    public void setTimeoutMinutes(Integer timeoutMinutes) {
+        this.timeoutMinutes = timeoutMinutes;
+    }
+
+    public Boolean getPublishChecks() {
+        return publishChecks;
+    }
+
+    public void setPublishChecks(Boolean publishChecks) {
+        this.publishChecks = publishChecks;
+    }
+
+    @Override
+    public StepExecution start(StepContext stepContext) {
+        return new AwaitChecksReportStepExecution(this, stepContext);
+    }
+
+    @Extension
+    public static class DescriptorImpl extends StepDescriptor {
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            return ImmutableSet.of(Run.class, TaskListener.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "awaitChecksReport";
+        }
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return "Wait for a Checks report";
+        }
+    }
+}
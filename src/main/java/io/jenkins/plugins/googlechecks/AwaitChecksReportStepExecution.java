@@ -0,0 +1,66 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+
+import javax.annotation.Nonnull;
+
+public class AwaitChecksReportStepExecution extends AbstractChecksReportStepExecution {
+    private static final long serialVersionUID = 1L;
+
+    private transient AwaitChecksReportStep step;
+
+    protected AwaitChecksReportStepExecution(AwaitChecksReportStep step, @Nonnull StepContext context) {
+        super(context);
+        this.step = step;
+        ChecksOperationHandle handle = step.getHandle();
+        if (handle == null) {
+            throw new IllegalArgumentException("You must provide the value returned by uploadToChecks(waitForReport: false)");
+        }
+        this.baseUrl = handle.getBaseUrl();
+        this.projectId = handle.getProjectId();
+        this.accountId = handle.getAccountId();
+        this.appId = handle.getAppId();
+        this.credentialsId = handle.getCredentialsId();
+        this.session = sessionOf(context);
+        this.operationId = handle.getOperationId();
+        this.uploadedAt = handle.getUploadedAt();
+        this.severityThreshold = step.getSeverityThreshold();
+        this.failOn = step.getFailOn();
+        this.timeoutMillis = toTimeoutMillis(step.getTimeoutMinutes());
+        this.checkName = checkNameOf(step.getPublishChecks(), appId);
+    }
+
+    @Override public boolean start() throws Exception {
+        submit(() -> {
+            loadPolicy(step.getPolicy(), step.getPolicyFile());
+            checks = createChecks();
+            authenticate();
+            startWaiting();
+            return null;
+        });
+        return false;
+    }
+
+    private void startWaiting() {
+        // the timeout counts from the upload, the analysis kept running while the pipeline did something else,
+        // but the operation is checked at least once even if the pipeline comes back late
+        long now = System.currentTimeMillis();
+        end = Math.max(uploadedAt + timeoutMillis, now + CHECK_OPERATION_INTERVAL * 1000L);
+        getListener().getLogger().printf("Waiting for the report of operationId=%s\n", operationId);
+        waitReport(now);
+    }
+}
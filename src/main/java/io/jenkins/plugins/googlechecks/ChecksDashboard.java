@@ -0,0 +1,237 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import hudson.BulkChange;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.Util;
+import hudson.XmlFile;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.RootAction;
+import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import io.jenkins.plugins.googlechecks.models.GoogleChecksCheck;
+import io.jenkins.plugins.googlechecks.models.GoogleChecksReport;
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ Latest Checks status of every app, across all the jobs, at JENKINS_URL/google-checks.
+
+ Each app has a rollup replaced when a step validates one of its reports, so the page only reads one entry per
+ app, whatever the number of jobs and builds.
+ */
+@Extension
+public class ChecksDashboard implements RootAction, Saveable {
+    private static final Logger LOGGER = Logger.getLogger(ChecksDashboard.class.getName());
+
+    // by accountId/appId
+    private final Map<String, AppStatus> apps = new ConcurrentHashMap<>();
+
+    public ChecksDashboard() {
+        XmlFile file = getConfigFile();
+        if (file.exists()) {
+            try {
+                file.unmarshal(this);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to load " + file, e);
+            }
+        }
+    }
+
+    public static ChecksDashboard get() {
+        return ExtensionList.lookupSingleton(ChecksDashboard.class);
+    }
+
+    @Override
+    public String getIconFileName() {
+        return Jenkins.get().hasPermission(Jenkins.READ) ? "clipboard.png" : null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Google Checks";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "google-checks";
+    }
+
+    public void update(String accountId, String appId, Run<?, ?> run, GoogleChecksReport report, String resultsUri, boolean valid) {
+        AppStatus status = new AppStatus(accountId, appId, run.getParent().getFullName(), run.getNumber(),
+                System.currentTimeMillis(), report.name, resultsUri, valid);
+        if (report.checks != null) {
+            for (GoogleChecksCheck check : report.checks) {
+                status.count(check);
+            }
+        }
+        // an older build completing late doesn't replace the status of a newer one
+        apps.merge(accountId + "/" + appId, status, (previous, next) ->
+                previous.getJob().equals(next.getJob()) && previous.getBuild() > next.getBuild() ? previous : next);
+        try {
+            save();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save the Google Checks dashboard", e);
+        }
+    }
+
+    /*
+     Statuses of the apps whose latest report comes from a job the user can read, most recent first.
+     */
+    public List<AppStatus> getApps() {
+        Jenkins jenkins = Jenkins.get();
+        jenkins.checkPermission(Jenkins.READ);
+        List<AppStatus> visible = new ArrayList<>();
+        for (AppStatus status : apps.values()) {
+            // null when the job is gone or the user can't read it
+            if (jenkins.getItemByFullName(status.getJob(), Item.class) != null) {
+                visible.add(status);
+            }
+        }
+        visible.sort(Comparator.comparingLong(AppStatus::getTime).reversed());
+        return visible;
+    }
+
+    @Override
+    public synchronized void save() throws IOException {
+        if (BulkChange.contains(this)) {
+            return;
+        }
+        XmlFile file = getConfigFile();
+        file.write(this);
+        SaveableListener.fireOnChange(this, file);
+    }
+
+    private static XmlFile getConfigFile() {
+        return new XmlFile(Jenkins.XSTREAM2, new File(Jenkins.get().getRootDir(), "google-checks/dashboard.xml"));
+    }
+
+    public static class AppStatus {
+        private final String accountId;
+        private final String appId;
+        private final String job;
+        private final int build;
+        private final long time;
+        private final String report;
+        private final String resultsUri;
+        private final boolean passed;
+        private int checks;
+        private int priorityFailures;
+        private int potentialFailures;
+        private int opportunityFailures;
+
+        AppStatus(String accountId, String appId, String job, int build, long time, String report, String resultsUri, boolean passed) {
+            this.accountId = accountId;
+            this.appId = appId;
+            this.job = job;
+            this.build = build;
+            this.time = time;
+            this.report = report;
+            this.resultsUri = resultsUri;
+            this.passed = passed;
+        }
+
+        void count(GoogleChecksCheck check) {
+            checks++;
+            if (!"FAILED".equals(check.state) || check.severity == null) {
+                return;
+            }
+            switch (check.severity) {
+                case "PRIORITY":
+                    priorityFailures++;
+                    break;
+                case "POTENTIAL":
+                    potentialFailures++;
+                    break;
+                case "OPPORTUNITY":
+                    opportunityFailures++;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        public String getAccountId() {
+            return accountId;
+        }
+
+        public String getAppId() {
+            return appId;
+        }
+
+        public String getJob() {
+            return job;
+        }
+
+        public int getBuild() {
+            return build;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public String getAge() {
+            return Util.getTimeSpanString(System.currentTimeMillis() - time);
+        }
+
+        public String getReport() {
+            return report;
+        }
+
+        public String getResultsUri() {
+            return resultsUri;
+        }
+
+        public boolean isPassed() {
+            return passed;
+        }
+
+        public int getChecks() {
+            return checks;
+        }
+
+        public int getPriorityFailures() {
+            return priorityFailures;
+        }
+
+        public int getPotentialFailures() {
+            return potentialFailures;
+        }
+
+        public int getOpportunityFailures() {
+            return opportunityFailures;
+        }
+
+        // relative to the root URL, null when the job is gone
+        public String getBuildUrl() {
+            Job<?, ?> item = Jenkins.get().getItemByFullName(job, Job.class);
+            return item == null ? null : item.getUrl() + build + "/";
+        }
+    }
+}
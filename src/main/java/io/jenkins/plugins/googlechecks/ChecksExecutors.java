@@ -0,0 +1,116 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ Runs the blocking calls to the Checks API (authentication, upload, operation polling, report fetching)
+ off the CPS VM thread and off jenkins.util.Timer.
+
+ On Java 21+ every call gets its own virtual thread, so thousands of waiting builds don't pin platform threads.
+ Otherwise (or with -Dio.jenkins.plugins.googlechecks.ChecksExecutors.virtualThreads=false) a bounded pool
+ of platform threads is used, sized with -Dio.jenkins.plugins.googlechecks.ChecksExecutors.poolSize.
+ */
+public final class ChecksExecutors {
+    private static final Logger LOGGER = Logger.getLogger(ChecksExecutors.class.getName());
+
+    static final boolean VIRTUAL_THREADS = SystemProperties.getBoolean(ChecksExecutors.class.getName() + ".virtualThreads", true);
+    static final int POOL_SIZE = SystemProperties.getInteger(ChecksExecutors.class.getName() + ".poolSize", 32);
+
+    private static volatile ExecutorService executor;
+    private static volatile ExecutorService readers;
+
+    private ChecksExecutors() {
+    }
+
+    public static ExecutorService get() {
+        ExecutorService result = executor;
+        if (result == null) {
+            synchronized (ChecksExecutors.class) {
+                result = executor;
+                if (result == null) {
+                    result = create(VIRTUAL_THREADS, POOL_SIZE);
+                    executor = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /*
+     Runs the disk readers of UploadPipeline. They are kept apart from get() since an upload running there waits on
+     its reader: sharing the bounded pool could starve every reader when all the threads are busy uploading.
+     */
+    public static ExecutorService readers() {
+        ExecutorService result = readers;
+        if (result == null) {
+            synchronized (ChecksExecutors.class) {
+                result = readers;
+                if (result == null) {
+                    result = VIRTUAL_THREADS ? newVirtualThreadExecutor() : null;
+                    if (result == null) {
+                        result = Executors.newCachedThreadPool(new NamingThreadFactory(new DaemonThreadFactory(), "GoogleChecks reader"));
+                    }
+                    readers = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    static ExecutorService create(boolean virtualThreads, int poolSize) {
+        if (virtualThreads) {
+            ExecutorService virtual = newVirtualThreadExecutor();
+            if (virtual != null) {
+                LOGGER.log(Level.FINE, "Running Checks API calls on virtual threads");
+                return virtual;
+            }
+        }
+        LOGGER.log(Level.FINE, "Running Checks API calls on a pool of {0} threads", poolSize);
+        return newBoundedPool(poolSize);
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() is only available on Java 21+, while the plugin is built for older releases.
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            // e.g. Java 19 and 20 where virtual threads are a preview feature
+            LOGGER.log(Level.FINE, "Virtual threads are not available", e);
+            return null;
+        }
+    }
+
+    static ExecutorService newBoundedPool(int poolSize) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new NamingThreadFactory(new DaemonThreadFactory(), "GoogleChecks"));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
@@ -0,0 +1,151 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/*
+ Sends the HTTP requests of GoogleChecks. The engine is chosen in the global configuration, see HttpEngine.
+ */
+public interface ChecksHttpEngine {
+    CompletableFuture<Response> sendAsync(Request request);
+
+    default Response send(Request request) throws IOException {
+        try {
+            return sendAsync(request).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + request.getUrl());
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    static IOException unwrap(Throwable cause) {
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+
+    final class Request {
+        private final String method;
+        private final String url;
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        private Body body;
+
+        public Request(String method, String url) {
+            this.method = method;
+            this.url = url;
+        }
+
+        public Request header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        public Request body(Body body) {
+            this.body = body;
+            return this;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public Map<String, String> getHeaders() {
+            return Collections.unmodifiableMap(headers);
+        }
+
+        public Body getBody() {
+            return body;
+        }
+    }
+
+    /*
+     Request body, opened by the engine when it sends it. A stream that can only be opened once (e.g. an
+     UploadPipeline) means the request can't be retried.
+     */
+    final class Body {
+        private final String contentType;
+        private final long length;
+        private final Supplier<InputStream> content;
+
+        // length is -1 when unknown
+        public Body(String contentType, long length, Supplier<InputStream> content) {
+            this.contentType = contentType;
+            this.length = length;
+            this.content = content;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public InputStream open() {
+            return content.get();
+        }
+    }
+
+    final class Response {
+        private final int statusCode;
+        private final String statusMessage;
+        private final String body;
+
+        public Response(int statusCode, String statusMessage, String body) {
+            this.statusCode = statusCode;
+            this.statusMessage = statusMessage;
+            this.body = body;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public String getStatusMessage() {
+            return statusMessage;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public boolean isSuccessStatusCode() {
+            return statusCode >= 200 && statusCode < 300;
+        }
+    }
+}
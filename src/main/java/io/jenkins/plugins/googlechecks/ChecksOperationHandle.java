@@ -0,0 +1,76 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import java.io.Serializable;
+
+/*
+ Returned by uploadToChecks when waitForReport is false, so that the pipeline can wait for the report
+ later on with awaitChecksReport. It only holds what is needed to poll the operation again.
+ */
+public class ChecksOperationHandle implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String baseUrl;
+    private final String projectId;
+    private final String accountId;
+    private final String appId;
+    private final String credentialsId;
+    private final String operationId;
+    private final long uploadedAt;
+
+    public ChecksOperationHandle(String baseUrl, String projectId, String accountId, String appId, String credentialsId, String operationId, long uploadedAt) {
+        this.baseUrl = baseUrl;
+        this.projectId = projectId;
+        this.accountId = accountId;
+        this.appId = appId;
+        this.credentialsId = credentialsId;
+        this.operationId = operationId;
+        this.uploadedAt = uploadedAt;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public String getProjectId() {
+        return projectId;
+    }
+
+    public String getAccountId() {
+        return accountId;
+    }
+
+    public String getAppId() {
+        return appId;
+    }
+
+    public String getCredentialsId() {
+        return credentialsId;
+    }
+
+    public String getOperationId() {
+        return operationId;
+    }
+
+    public long getUploadedAt() {
+        return uploadedAt;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("accounts/%s/apps/%s/operations/%s", accountId, appId, operationId);
+    }
+}
@@ -0,0 +1,77 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import io.jenkins.plugins.googlechecks.models.GoogleChecksOperation;
+import jenkins.util.SystemProperties;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/*
+ Cancels the analysis operations tracked by ChecksOperationTracker whose build is gone or not running anymore,
+ or which are well past their deadline, so that they stop using quota.
+ */
+@Extension
+public class ChecksOperationReaper extends AsyncPeriodicWork {
+    private static final long RECURRENCE_MINUTES = SystemProperties.getLong(ChecksOperationReaper.class.getName() + ".recurrenceMinutes", 5L);
+    // the step itself cancels the operation at the deadline, the reaper only steps in if it couldn't
+    private static final long GRACE_PERIOD = TimeUnit.MINUTES.toMillis(10);
+    private static final int MAX_CLEANUP_ATTEMPTS = 3;
+
+    public ChecksOperationReaper() {
+        super("Google Checks operation reaper");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.MINUTES.toMillis(RECURRENCE_MINUTES);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        ChecksOperationTracker tracker = ChecksOperationTracker.get();
+        try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+            for (ChecksOperationTracker.TrackedOperation operation : tracker.getOperations()) {
+                Run<?, ?> run = operation.getRunId() == null ? null : Run.fromExternalizableId(operation.getRunId());
+                boolean orphaned = run == null || !run.isBuilding() || System.currentTimeMillis() > operation.getDeadline() + GRACE_PERIOD;
+                if (!orphaned) {
+                    continue;
+                }
+                try {
+                    GoogleChecks checks = new GoogleChecks(operation.getBaseUrl(), operation.getProjectId(), operation.getAccountId(), operation.getAppId());
+                    checks.authenticate(operation.getCredentialsId(), run);
+                    GoogleChecksOperation response = checks.checkOperation(operation.getOperationId());
+                    if (response.done == null || !response.done) {
+                        checks.cancelOperation(operation.getOperationId());
+                        listener.getLogger().printf("Cancelled orphaned operation %s of %s%n", operation.getName(), operation.getRunId());
+                    }
+                    tracker.untrack(operation.getName());
+                } catch (IOException | RuntimeException e) {
+                    listener.error("Failed to clean up operation %s: %s", operation.getName(), e);
+                    if (operation.incrementCleanupAttempts() >= MAX_CLEANUP_ATTEMPTS) {
+                        tracker.untrack(operation.getName());
+                    }
+                }
+            }
+        }
+    }
+}
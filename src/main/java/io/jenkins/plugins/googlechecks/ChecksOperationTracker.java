@@ -0,0 +1,159 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import hudson.BulkChange;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ Analysis operations that a step is waiting on, persisted so that ChecksOperationReaper can cancel the ones
+ left behind by builds that are gone, e.g. after a controller crash.
+ */
+@Extension
+public class ChecksOperationTracker implements Saveable {
+    private static final Logger LOGGER = Logger.getLogger(ChecksOperationTracker.class.getName());
+
+    private final Map<String, TrackedOperation> operations = new ConcurrentHashMap<>();
+
+    public ChecksOperationTracker() {
+        XmlFile file = getConfigFile();
+        if (file.exists()) {
+            try {
+                file.unmarshal(this);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to load " + file, e);
+            }
+        }
+    }
+
+    public static ChecksOperationTracker get() {
+        return ExtensionList.lookupSingleton(ChecksOperationTracker.class);
+    }
+
+    public void track(TrackedOperation operation) {
+        operations.put(operation.getName(), operation);
+        saveQuietly();
+    }
+
+    public void untrack(String name) {
+        if (operations.remove(name) != null) {
+            saveQuietly();
+        }
+    }
+
+    public List<TrackedOperation> getOperations() {
+        return new ArrayList<>(operations.values());
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save the tracked Checks operations", e);
+        }
+    }
+
+    @Override
+    public synchronized void save() throws IOException {
+        if (BulkChange.contains(this)) {
+            return;
+        }
+        XmlFile file = getConfigFile();
+        file.write(this);
+        SaveableListener.fireOnChange(this, file);
+    }
+
+    private static XmlFile getConfigFile() {
+        return new XmlFile(Jenkins.XSTREAM2, new File(Jenkins.get().getRootDir(), ChecksOperationTracker.class.getName() + ".xml"));
+    }
+
+    public static class TrackedOperation {
+        private final String baseUrl;
+        private final String projectId;
+        private final String accountId;
+        private final String appId;
+        private final String operationId;
+        private final String credentialsId;
+        private final String runId;
+        private final long deadline;
+        private int cleanupAttempts;
+
+        public TrackedOperation(String baseUrl, String projectId, String accountId, String appId, String operationId,
+                                String credentialsId, String runId, long deadline) {
+            this.baseUrl = baseUrl;
+            this.projectId = projectId;
+            this.accountId = accountId;
+            this.appId = appId;
+            this.operationId = operationId;
+            this.credentialsId = credentialsId;
+            this.runId = runId;
+            this.deadline = deadline;
+        }
+
+        public String getName() {
+            return String.format("accounts/%s/apps/%s/operations/%s", accountId, appId, operationId);
+        }
+
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        public String getProjectId() {
+            return projectId;
+        }
+
+        public String getAccountId() {
+            return accountId;
+        }
+
+        public String getAppId() {
+            return appId;
+        }
+
+        public String getOperationId() {
+            return operationId;
+        }
+
+        public String getCredentialsId() {
+            return credentialsId;
+        }
+
+        public String getRunId() {
+            return runId;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        int incrementCleanupAttempts() {
+            return ++cleanupAttempts;
+        }
+    }
+}
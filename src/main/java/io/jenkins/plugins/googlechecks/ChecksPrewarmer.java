@@ -0,0 +1,58 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ After a restart, the first builds would all parse the service account, exchange it for an access token and
+ open a TLS connection to the API at the same time. When enabled in the global configuration, this is done once
+ in the background at startup instead, and the builds reuse the cached token and the warm connection.
+ */
+public final class ChecksPrewarmer {
+    private static final Logger LOGGER = Logger.getLogger(ChecksPrewarmer.class.getName());
+
+    private ChecksPrewarmer() {
+    }
+
+    // after CredentialsResolutionCache is reset, the cache filled here is kept
+    @Initializer(after = InitMilestone.JOB_CONFIG_ADAPTED)
+    public static void prewarm() {
+        GoogleChecksConfiguration configuration = GoogleChecksConfiguration.get();
+        if (!configuration.isPrewarm()) {
+            return;
+        }
+        String credentialsId = configuration.getDefaultCredentialsId();
+        // startup must not wait for the network
+        ChecksExecutors.get().submit(() -> {
+            long start = System.nanoTime();
+            try {
+                GoogleChecks.warmUp(null);
+                if (credentialsId != null) {
+                    GoogleCredentialsHelperFactory.getInstance().getOrCreateGoogleCredentialsHelper().authenticate(credentialsId);
+                }
+                LOGGER.log(Level.FINE, "Google Checks connection and token ready in {0} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } catch (Exception e) {
+                // the builds will do it themselves
+                LOGGER.log(Level.INFO, "Failed to prewarm the Google Checks connection", e);
+            }
+        });
+    }
+}
@@ -0,0 +1,141 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import io.jenkins.plugins.googlechecks.models.GoogleChecksCheck;
+import io.jenkins.plugins.googlechecks.models.GoogleChecksReport;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/*
+ Checks of the latest reports fetched by the steps, by report name, so that ChecksResult.getChecks() doesn't call the
+ API again. Kept as JSON under JENKINS_HOME/google-checks/reports, the oldest files are deleted past maxReports.
+ The parsed checks are kept in memory as long as the heap allows it.
+ */
+public final class ChecksReportCache {
+    private static final Logger LOGGER = Logger.getLogger(ChecksReportCache.class.getName());
+    private static final ChecksReportCache INSTANCE = new ChecksReportCache();
+    private static final JsonFactory JSON_FACTORY = new GsonFactory();
+
+    static final int MAX_REPORTS = SystemProperties.getInteger(ChecksReportCache.class.getName() + ".maxReports", 1000);
+
+    private final Map<String, SoftReference<List<GoogleChecksCheck>>> memory = new ConcurrentHashMap<>();
+
+    private ChecksReportCache() {
+    }
+
+    public static ChecksReportCache get() {
+        return INSTANCE;
+    }
+
+    public void put(String reportName, GoogleChecksReport report) {
+        List<GoogleChecksCheck> checks = report.checks == null ? new ArrayList<>() : report.checks;
+        memory.put(reportName, new SoftReference<>(checks));
+        try {
+            Path dir = getDirectory();
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, "report", ".tmp");
+            Files.writeString(tmp, JSON_FACTORY.toString(report));
+            Files.move(tmp, dir.resolve(fileName(reportName)), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            evict(dir);
+        } catch (IOException e) {
+            // only the lazy loading of ChecksResult depends on it, it calls the API instead
+            LOGGER.log(Level.WARNING, "Failed to cache " + reportName, e);
+        }
+    }
+
+    /*
+     Checks of the report, or null when it isn't cached anymore.
+     */
+    public List<GoogleChecksCheck> get(String reportName) throws IOException {
+        SoftReference<List<GoogleChecksCheck>> cached = memory.get(reportName);
+        List<GoogleChecksCheck> checks = cached == null ? null : cached.get();
+        if (checks != null) {
+            return checks;
+        }
+        String json;
+        try {
+            json = Files.readString(getDirectory().resolve(fileName(reportName)));
+        } catch (NoSuchFileException e) {
+            memory.remove(reportName);
+            return null;
+        }
+        GoogleChecksReport report = JSON_FACTORY.fromString(json, GoogleChecksReport.class);
+        checks = report.checks == null ? new ArrayList<>() : report.checks;
+        memory.put(reportName, new SoftReference<>(checks));
+        return checks;
+    }
+
+    private void evict(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> list = Files.list(dir)) {
+            list.filter(file -> file.getFileName().toString().endsWith(".json")).forEach(files::add);
+        }
+        if (files.size() <= MAX_REPORTS) {
+            return;
+        }
+        files.sort(Comparator.comparingLong(file -> file.toFile().lastModified()));
+        for (Path file : files.subList(0, files.size() - MAX_REPORTS)) {
+            Files.deleteIfExists(file);
+        }
+        // the files are named after a hash of the report name
+        Set<String> kept = new HashSet<>();
+        for (Path file : files.subList(files.size() - MAX_REPORTS, files.size())) {
+            kept.add(file.getFileName().toString());
+        }
+        memory.entrySet().removeIf(entry -> entry.getValue().get() == null || !kept.contains(fileName(entry.getKey())));
+    }
+
+    private static Path getDirectory() {
+        return new File(Jenkins.get().getRootDir(), "google-checks/reports").toPath();
+    }
+
+    // report names contain slashes
+    private static String fileName(String reportName) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(reportName.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex + ".json";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
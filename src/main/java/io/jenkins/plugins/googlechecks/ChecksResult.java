@@ -0,0 +1,177 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import hudson.AbortException;
+import io.jenkins.plugins.googlechecks.models.GoogleChecksCheck;
+import io.jenkins.plugins.googlechecks.models.GoogleChecksReport;
+import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.Whitelisted;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ Returned by uploadToChecks and awaitChecksReport once the report is validated, e.g.
+
+ def result = uploadToChecks(...)
+ if (result.failedBySeverity.PRIORITY > 0) { ... }
+
+ Only counts are serialized with the pipeline. The checks themselves are loaded on first access to getChecks(), from
+ ChecksReportCache, and are not saved with the pipeline. getChecks() is called from the CPS VM thread, so it never calls
+ the API: once the report fell out of the cache, it fails.
+ */
+public class ChecksResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String accountId;
+    private final String appId;
+    private final String reportName;
+    private final String resultsUri;
+    private final boolean passed;
+    private final int total;
+    private final Map<String, Integer> failedBySeverity = new TreeMap<>();
+    private final Map<String, Integer> countByState = new TreeMap<>();
+    private final long uploadedBytes;
+    private final long uploadMillis;
+    private final long analysisMillis;
+    private transient List<Map<String, String>> checks;
+
+    ChecksResult(String accountId, String appId, String reportName, GoogleChecksReport report, String resultsUri, boolean passed,
+                 long uploadedBytes, long uploadMillis, long analysisMillis) {
+        this.accountId = accountId;
+        this.appId = appId;
+        this.reportName = reportName;
+        this.resultsUri = resultsUri;
+        this.passed = passed;
+        this.uploadedBytes = uploadedBytes;
+        this.uploadMillis = uploadMillis;
+        this.analysisMillis = analysisMillis;
+        List<GoogleChecksCheck> reportChecks = report.checks == null ? Collections.emptyList() : report.checks;
+        this.total = reportChecks.size();
+        for (GoogleChecksCheck check : reportChecks) {
+            countByState.merge(String.valueOf(check.state), 1, Integer::sum);
+            if ("FAILED".equals(check.state)) {
+                failedBySeverity.merge(String.valueOf(check.severity), 1, Integer::sum);
+            }
+        }
+    }
+
+    @Whitelisted
+    public String getAccountId() {
+        return accountId;
+    }
+
+    @Whitelisted
+    public String getAppId() {
+        return appId;
+    }
+
+    @Whitelisted
+    public String getReportName() {
+        return reportName;
+    }
+
+    @Whitelisted
+    public String getResultsUri() {
+        return resultsUri;
+    }
+
+    /*
+     Whether the report passed the severityThreshold or the gating policy of the step.
+     */
+    @Whitelisted
+    public boolean isPassed() {
+        return passed;
+    }
+
+    @Whitelisted
+    public int getTotal() {
+        return total;
+    }
+
+    /*
+     Failed checks by severity, e.g. [POTENTIAL: 2, PRIORITY: 1]. Severities without failed checks are left out.
+     */
+    @Whitelisted
+    public Map<String, Integer> getFailedBySeverity() {
+        return Collections.unmodifiableMap(failedBySeverity);
+    }
+
+    /*
+     Checks by state, e.g. [FAILED: 3, PASSED: 40].
+     */
+    @Whitelisted
+    public Map<String, Integer> getCountByState() {
+        return Collections.unmodifiableMap(countByState);
+    }
+
+    @Whitelisted
+    public int getFailed() {
+        return countByState.getOrDefault("FAILED", 0);
+    }
+
+    // 0 for awaitChecksReport
+    @Whitelisted
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    // 0 for awaitChecksReport
+    @Whitelisted
+    public long getUploadMillis() {
+        return uploadMillis;
+    }
+
+    // from the end of the upload to the report
+    @Whitelisted
+    public long getAnalysisMillis() {
+        return analysisMillis;
+    }
+
+    /*
+     Every check of the report as a map with type, state and severity. Loaded on first access.
+     */
+    @Whitelisted
+    public synchronized List<Map<String, String>> getChecks() throws IOException {
+        if (checks == null) {
+            List<GoogleChecksCheck> loaded = ChecksReportCache.get().get(reportName);
+            if (loaded == null) {
+                throw new AbortException(String.format("The checks of %s aren't cached on the controller anymore, read them "
+                        + "right after the step returns or see %s", reportName, resultsUri));
+            }
+            List<Map<String, String>> result = new ArrayList<>(loaded.size());
+            for (GoogleChecksCheck check : loaded) {
+                Map<String, String> map = new LinkedHashMap<>();
+                map.put("type", check.type);
+                map.put("state", check.state);
+                map.put("severity", check.severity);
+                result.add(Collections.unmodifiableMap(map));
+            }
+            checks = Collections.unmodifiableList(result);
+        }
+        return checks;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %s, %d of %d checks failed %s", reportName, passed ? "passed" : "failed", getFailed(), total, failedBySeverity);
+    }
+}
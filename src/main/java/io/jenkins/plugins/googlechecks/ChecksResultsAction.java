@@ -0,0 +1,114 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.verb.GET;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+
+/*
+ REST API of ChecksResultsStore, e.g.
+ JENKINS_URL/google-checks-results/query?type=DATA_MONITORING_NEW_ENDPOINT&state=FAILED&since=2024-06-01&groupBy=app
+
+ Only the results of the jobs the user can read are returned.
+ */
+@Extension
+public class ChecksResultsAction implements RootAction {
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Google Checks results";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "google-checks-results";
+    }
+
+    @GET
+    public HttpResponse doQuery(@QueryParameter String accountId, @QueryParameter String appId, @QueryParameter String job,
+                                @QueryParameter String type, @QueryParameter String severity, @QueryParameter String state,
+                                @QueryParameter String since, @QueryParameter String until, @QueryParameter String groupBy,
+                                @QueryParameter Integer limit) throws IOException {
+        Jenkins jenkins = Jenkins.get();
+        jenkins.checkPermission(Jenkins.READ);
+        ChecksResultsStore.Query query;
+        try {
+            query = new ChecksResultsStore.Query()
+                    .accountId(accountId)
+                    .appId(appId)
+                    .jobFullName(job)
+                    .type(type)
+                    .severity(severity)
+                    .state(state)
+                    .groupBy(groupBy)
+                    .limit(limit == null ? 1000 : Math.max(0, limit));
+            if (since != null) {
+                query.since(parseTime(since, false));
+            }
+            if (until != null) {
+                query.until(parseTime(until, true));
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return HttpResponses.errorJSON(e.getMessage());
+        }
+
+        boolean admin = jenkins.hasPermission(Jenkins.ADMINISTER);
+        long start = System.nanoTime();
+        // getItemByFullName returns null for the jobs the user can't read
+        ChecksResultsStore.Result result = ChecksResultsStore.get().query(query,
+                name -> admin || jenkins.getItemByFullName(name, Item.class) != null);
+
+        JSONObject json = new JSONObject();
+        json.put("reports", result.getReports());
+        json.put("total", result.getTotal());
+        if (groupBy != null) {
+            json.put("groups", result.getGroups());
+        } else {
+            json.put("rows", result.getRows());
+        }
+        json.put("tookMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return HttpResponses.okJSON(json);
+    }
+
+    // milliseconds since the epoch, an ISO instant, or a day (the whole day is included)
+    static long parseTime(String value, boolean endOfDay) {
+        if (value.matches("\\d+")) {
+            return Long.parseLong(value);
+        }
+        if (value.contains("T")) {
+            return Instant.parse(value).toEpochMilli();
+        }
+        LocalDate day = LocalDate.parse(value);
+        return (endOfDay ? day.plusDays(1) : day).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli() - (endOfDay ? 1 : 0);
+    }
+}
@@ -0,0 +1,692 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import io.jenkins.plugins.googlechecks.models.GoogleChecksCheck;
+import jenkins.model.Jenkins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ Checks of every report fetched by the steps, kept on the controller so that they can be queried across builds
+ (e.g. "which apps failed checks of type X this month") without reading build logs.
+
+ Data lives in JENKINS_HOME/google-checks/results:
+ - strings.log: the interned strings (apps, jobs, check types, severities, states), a string is stored once
+   and referenced by its index everywhere else
+ - reports.log: one record per report, followed by its checks as string indexes
+
+ Both files are append-only. In memory, reports and checks are stored as columns of primitive arrays, with
+ indexes by app (reports), by type and by severity (checks); reports are recorded in time order, so a time range
+ is a binary search. A query starts from the most selective index and filters the other columns.
+ */
+@Extension
+public class ChecksResultsStore {
+    private static final Logger LOGGER = Logger.getLogger(ChecksResultsStore.class.getName());
+
+    private final File dir;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean loaded;
+
+    // interned strings
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIds = new HashMap<>();
+
+    // report columns
+    private final LongColumn reportTime = new LongColumn();
+    private final IntColumn reportAccount = new IntColumn();
+    private final IntColumn reportApp = new IntColumn();
+    private final IntColumn reportJob = new IntColumn();
+    private final IntColumn reportBuild = new IntColumn();
+    private final IntColumn reportName = new IntColumn();
+    private final IntColumn reportFirstCheck = new IntColumn();
+
+    // check columns
+    private final IntColumn checkReport = new IntColumn();
+    private final IntColumn checkType = new IntColumn();
+    private final IntColumn checkSeverity = new IntColumn();
+    private final IntColumn checkState = new IntColumn();
+
+    // string id -> rows
+    private final Map<Integer, IntColumn> reportsByApp = new HashMap<>();
+    private final Map<Integer, IntColumn> checksByType = new HashMap<>();
+    private final Map<Integer, IntColumn> checksBySeverity = new HashMap<>();
+
+    private DataOutputStream stringsOut;
+    private DataOutputStream reportsOut;
+    // lengths of the valid records in the logs
+    private long stringsLength;
+    private long reportsLength;
+
+    public ChecksResultsStore() {
+        this(new File(Jenkins.get().getRootDir(), "google-checks/results"));
+    }
+
+    ChecksResultsStore(File dir) {
+        this.dir = dir;
+    }
+
+    public static ChecksResultsStore get() {
+        return ExtensionList.lookupSingleton(ChecksResultsStore.class);
+    }
+
+    public void record(String accountId, String appId, String jobFullName, int buildNumber, String report, List<GoogleChecksCheck> checks) throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureLoaded();
+            if (reportsOut == null) {
+                openStreams();
+            }
+            int goodStrings = strings.size();
+            long goodStringsLength = stringsLength;
+            try {
+                write(accountId, appId, jobFullName, buildNumber, report, checks);
+            } catch (IOException e) {
+                // forget what may be half written, the next record truncates the logs back to the last good lengths
+                for (int i = strings.size() - 1; i >= goodStrings; i--) {
+                    stringIds.remove(strings.remove(i));
+                }
+                stringsLength = goodStringsLength;
+                closeStreams();
+                throw e;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void write(String accountId, String appId, String jobFullName, int buildNumber, String report, List<GoogleChecksCheck> checks) throws IOException {
+        int account = intern(accountId);
+        int app = intern(appId);
+        int job = intern(jobFullName);
+        int name = intern(report);
+        int[] types = new int[checks.size()];
+        int[] severities = new int[checks.size()];
+        int[] states = new int[checks.size()];
+        for (int i = 0; i < checks.size(); i++) {
+            types[i] = intern(checks.get(i).type);
+            severities[i] = intern(checks.get(i).severity);
+            states[i] = intern(checks.get(i).state);
+        }
+        // keep the time column sorted even if the clock goes back
+        long time = Math.max(System.currentTimeMillis(), reportTime.size() == 0 ? 0 : reportTime.get(reportTime.size() - 1));
+        stringsOut.flush();
+
+        // a single write, so that a failure can't leave a misaligned fragment in the middle of the log
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 + 4 * 6 + 12 * types.length);
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeLong(time);
+        record.writeInt(account);
+        record.writeInt(app);
+        record.writeInt(job);
+        record.writeInt(buildNumber);
+        record.writeInt(name);
+        record.writeInt(types.length);
+        for (int i = 0; i < types.length; i++) {
+            record.writeInt(types[i]);
+            record.writeInt(severities[i]);
+            record.writeInt(states[i]);
+        }
+        bytes.writeTo(reportsOut);
+        reportsOut.flush();
+        reportsLength += bytes.size();
+
+        addReport(time, account, app, job, buildNumber, name, types, severities, states);
+    }
+
+    public Result query(Query query, Predicate<String> jobFilter) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (!loaded) {
+                // loading needs the write lock
+                lock.readLock().unlock();
+                lock.writeLock().lock();
+                try {
+                    ensureLoaded();
+                } finally {
+                    lock.readLock().lock();
+                    lock.writeLock().unlock();
+                }
+            }
+            return new Execution(query, jobFilter).run();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getReportCount() throws IOException {
+        return query(new Query(), job -> true).getReports();
+    }
+
+    private int intern(String value) throws IOException {
+        String s = value == null ? "" : value;
+        Integer id = stringIds.get(s);
+        if (id == null) {
+            stringsOut.writeUTF(s);
+            stringsLength += 2 + utfLength(s);
+            id = addString(s);
+        }
+        return id;
+    }
+
+    private int addString(String s) {
+        int id = strings.size();
+        strings.add(s);
+        stringIds.put(s, id);
+        return id;
+    }
+
+    private void addReport(long time, int account, int app, int job, int build, int name, int[] types, int[] severities, int[] states) {
+        int report = reportTime.size();
+        reportTime.add(time);
+        reportAccount.add(account);
+        reportApp.add(app);
+        reportJob.add(job);
+        reportBuild.add(build);
+        reportName.add(name);
+        reportFirstCheck.add(checkReport.size());
+        reportsByApp.computeIfAbsent(app, k -> new IntColumn()).add(report);
+        for (int i = 0; i < types.length; i++) {
+            int check = checkReport.size();
+            checkReport.add(report);
+            checkType.add(types[i]);
+            checkSeverity.add(severities[i]);
+            checkState.add(states[i]);
+            checksByType.computeIfAbsent(types[i], k -> new IntColumn()).add(check);
+            checksBySeverity.computeIfAbsent(severities[i], k -> new IntColumn()).add(check);
+        }
+    }
+
+    private int checkEnd(int report) {
+        return report + 1 < reportFirstCheck.size() ? reportFirstCheck.get(report + 1) : checkReport.size();
+    }
+
+    private void ensureLoaded() throws IOException {
+        if (loaded) {
+            return;
+        }
+        Files.createDirectories(dir.toPath());
+        File stringsFile = new File(dir, "strings.log");
+        File reportsFile = new File(dir, "reports.log");
+        if (stringsFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(stringsFile)))) {
+                while (true) {
+                    String s = in.readUTF();
+                    addString(s);
+                    stringsLength += 2 + utfLength(s);
+                }
+            } catch (EOFException e) {
+                // end of file, or a record cut by a crash
+            }
+        }
+        if (reportsFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(reportsFile)))) {
+                while (true) {
+                    long time = in.readLong();
+                    int account = in.readInt();
+                    int app = in.readInt();
+                    int job = in.readInt();
+                    int build = in.readInt();
+                    int name = in.readInt();
+                    int count = in.readInt();
+                    int[] types = new int[count];
+                    int[] severities = new int[count];
+                    int[] states = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        types[i] = in.readInt();
+                        severities[i] = in.readInt();
+                        states[i] = in.readInt();
+                    }
+                    if (!validIds(account, app, job, name) || !validIds(types) || !validIds(severities) || !validIds(states)) {
+                        LOGGER.log(Level.WARNING, "Ignoring the end of {0} which references unknown strings", reportsFile);
+                        break;
+                    }
+                    addReport(time, account, app, job, build, name, types, severities, states);
+                    reportsLength += 8 + 4 * 6 + 12L * count;
+                }
+            } catch (EOFException e) {
+                // end of file, or a record cut by a crash
+            }
+        }
+        loaded = true;
+        openStreams();
+        LOGGER.log(Level.FINE, "Loaded {0} reports and {1} checks from {2}", new Object[] {reportTime.size(), checkReport.size(), dir});
+    }
+
+    private void openStreams() throws IOException {
+        File stringsFile = new File(dir, "strings.log");
+        File reportsFile = new File(dir, "reports.log");
+        // drop what a crash or a failed write may have left half written, so that new records are appended after valid ones
+        truncate(stringsFile, stringsLength);
+        truncate(reportsFile, reportsLength);
+        stringsOut = new DataOutputStream(new BufferedOutputStream(newOutputStream(stringsFile)));
+        reportsOut = new DataOutputStream(new BufferedOutputStream(newOutputStream(reportsFile)));
+    }
+
+    // overridden by tests
+    OutputStream newOutputStream(File file) throws IOException {
+        return new FileOutputStream(file, true);
+    }
+
+    private void closeStreams() {
+        for (DataOutputStream out : new DataOutputStream[] {stringsOut, reportsOut}) {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Failed to close a log of " + dir, e);
+                }
+            }
+        }
+        stringsOut = null;
+        reportsOut = null;
+    }
+
+    private boolean validIds(int... ids) {
+        for (int id : ids) {
+            if (id < 0 || id >= strings.size()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int utfLength(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            length += c >= 0x0001 && c <= 0x007F ? 1 : c > 0x07FF ? 3 : 2;
+        }
+        return length;
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        if (file.exists() && file.length() > length) {
+            LOGGER.log(Level.WARNING, "Truncating {0} to {1} bytes", new Object[] {file, length});
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(length);
+            }
+        }
+    }
+
+    /*
+     Filters of a query, null means any. Times are in milliseconds since the epoch.
+     */
+    public static final class Query {
+        String accountId;
+        String appId;
+        String jobFullName;
+        String type;
+        String severity;
+        String state;
+        long since = Long.MIN_VALUE;
+        long until = Long.MAX_VALUE;
+        // null lists the checks, otherwise counts them by app, job, type, severity or state
+        String groupBy;
+        int limit = 1000;
+
+        public Query accountId(String accountId) {
+            this.accountId = accountId;
+            return this;
+        }
+
+        public Query appId(String appId) {
+            this.appId = appId;
+            return this;
+        }
+
+        public Query jobFullName(String jobFullName) {
+            this.jobFullName = jobFullName;
+            return this;
+        }
+
+        public Query type(String type) {
+            this.type = type;
+            return this;
+        }
+
+        public Query severity(String severity) {
+            this.severity = severity;
+            return this;
+        }
+
+        public Query state(String state) {
+            this.state = state;
+            return this;
+        }
+
+        public Query since(long since) {
+            this.since = since;
+            return this;
+        }
+
+        public Query until(long until) {
+            this.until = until;
+            return this;
+        }
+
+        public Query groupBy(String groupBy) {
+            if (groupBy != null && !Arrays.asList("app", "job", "type", "severity", "state").contains(groupBy)) {
+                throw new IllegalArgumentException("Unknown groupBy: " + groupBy);
+            }
+            this.groupBy = groupBy;
+            return this;
+        }
+
+        public Query limit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+    }
+
+    public static final class Result {
+        private final int reports;
+        private final int total;
+        private final List<Map<String, Object>> rows;
+        private final Map<String, Integer> groups;
+
+        Result(int reports, int total, List<Map<String, Object>> rows, Map<String, Integer> groups) {
+            this.reports = reports;
+            this.total = total;
+            this.rows = rows;
+            this.groups = groups;
+        }
+
+        // number of matching reports
+        public int getReports() {
+            return reports;
+        }
+
+        // number of matching checks
+        public int getTotal() {
+            return total;
+        }
+
+        public List<Map<String, Object>> getRows() {
+            return rows;
+        }
+
+        public Map<String, Integer> getGroups() {
+            return groups;
+        }
+    }
+
+    private final class Execution {
+        private final Query query;
+        private final Predicate<String> jobFilter;
+        // by job string id: 0 unknown, 1 visible, 2 hidden
+        private final byte[] jobVisibility = new byte[strings.size()];
+        private final int account;
+        private final int app;
+        private final int job;
+        private final int type;
+        private final int severity;
+        private final int state;
+        private final int firstReport;
+        private final int lastReport;
+        private int lastMatchedReport = -1;
+        private int reports;
+        private int total;
+        private final List<Map<String, Object>> rows = new ArrayList<>();
+        private final Map<String, Integer> groups = new TreeMap<>();
+
+        Execution(Query query, Predicate<String> jobFilter) {
+            this.query = query;
+            this.jobFilter = jobFilter;
+            this.account = id(query.accountId);
+            this.app = id(query.appId);
+            this.job = id(query.jobFullName);
+            this.type = id(query.type);
+            this.severity = id(query.severity);
+            this.state = id(query.state);
+            this.firstReport = lowerBound(query.since);
+            this.lastReport = query.until == Long.MAX_VALUE ? reportTime.size() : lowerBound(query.until + 1);
+        }
+
+        // -1 for any, -2 for a string never recorded
+        private int id(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer id = stringIds.get(value);
+            return id == null ? -2 : id;
+        }
+
+        Result run() {
+            if (account == -2 || app == -2 || job == -2 || type == -2 || severity == -2 || state == -2 || firstReport >= lastReport) {
+                return new Result(0, 0, rows, groups);
+            }
+            // start from the smallest candidate set
+            IntColumn byApp = app >= 0 ? reportsByApp.get(app) : null;
+            IntColumn byType = type >= 0 ? checksByType.get(type) : null;
+            IntColumn bySeverity = severity >= 0 ? checksBySeverity.get(severity) : null;
+            int rangeChecks = (lastReport < reportFirstCheck.size() ? reportFirstCheck.get(lastReport) : checkReport.size()) - reportFirstCheck.get(firstReport);
+            int appChecks = byApp == null ? Integer.MAX_VALUE : estimateChecks(byApp);
+            int typeChecks = byType == null ? Integer.MAX_VALUE : byType.size();
+            int severityChecks = bySeverity == null ? Integer.MAX_VALUE : bySeverity.size();
+            int best = Math.min(Math.min(rangeChecks, appChecks), Math.min(typeChecks, severityChecks));
+
+            if (best == typeChecks || best == severityChecks) {
+                IntColumn checks = best == typeChecks ? byType : bySeverity;
+                // check rows are in report order, so in time order
+                for (int i = lowerBoundChecks(checks, reportFirstCheck.get(firstReport)); i < checks.size(); i++) {
+                    int check = checks.get(i);
+                    if (checkReport.get(check) >= lastReport) {
+                        break;
+                    }
+                    visit(check);
+                }
+            } else if (best == appChecks) {
+                for (int i = 0; i < byApp.size(); i++) {
+                    int report = byApp.get(i);
+                    if (report >= firstReport && report < lastReport) {
+                        visitReport(report);
+                    }
+                }
+            } else {
+                for (int report = firstReport; report < lastReport; report++) {
+                    visitReport(report);
+                }
+            }
+            return new Result(reports, total, rows, groups);
+        }
+
+        private int estimateChecks(IntColumn reportRows) {
+            long checks = 0;
+            for (int i = 0; i < reportRows.size(); i++) {
+                int report = reportRows.get(i);
+                checks += checkEnd(report) - reportFirstCheck.get(report);
+            }
+            return (int) Math.min(Integer.MAX_VALUE - 1, checks);
+        }
+
+        private void visitReport(int report) {
+            if (!matchesReport(report)) {
+                return;
+            }
+            int end = checkEnd(report);
+            for (int check = reportFirstCheck.get(report); check < end; check++) {
+                visitCheck(report, check);
+            }
+            if (end == reportFirstCheck.get(report) && type == -1 && severity == -1 && state == -1) {
+                // a report without checks still counts as a report
+                countReport(report);
+            }
+        }
+
+        private void visit(int check) {
+            int report = checkReport.get(check);
+            if (matchesReport(report)) {
+                visitCheck(report, check);
+            }
+        }
+
+        private boolean matchesReport(int report) {
+            return (account < 0 || reportAccount.get(report) == account)
+                    && (app < 0 || reportApp.get(report) == app)
+                    && (job < 0 || reportJob.get(report) == job)
+                    && isVisible(reportJob.get(report));
+        }
+
+        private void visitCheck(int report, int check) {
+            if (type >= 0 && checkType.get(check) != type
+                    || severity >= 0 && checkSeverity.get(check) != severity
+                    || state >= 0 && checkState.get(check) != state) {
+                return;
+            }
+            countReport(report);
+            total++;
+            if (query.groupBy != null) {
+                groups.merge(groupKey(report, check), 1, Integer::sum);
+            } else if (rows.size() < query.limit) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("time", reportTime.get(report));
+                row.put("accountId", strings.get(reportAccount.get(report)));
+                row.put("appId", strings.get(reportApp.get(report)));
+                row.put("job", strings.get(reportJob.get(report)));
+                row.put("build", reportBuild.get(report));
+                row.put("report", strings.get(reportName.get(report)));
+                row.put("type", strings.get(checkType.get(check)));
+                row.put("severity", strings.get(checkSeverity.get(check)));
+                row.put("state", strings.get(checkState.get(check)));
+                rows.add(row);
+            }
+        }
+
+        private void countReport(int report) {
+            if (report != lastMatchedReport) {
+                lastMatchedReport = report;
+                reports++;
+            }
+        }
+
+        private String groupKey(int report, int check) {
+            switch (query.groupBy) {
+                case "app":
+                    return strings.get(reportAccount.get(report)) + "/" + strings.get(reportApp.get(report));
+                case "job":
+                    return strings.get(reportJob.get(report));
+                case "type":
+                    return strings.get(checkType.get(check));
+                case "severity":
+                    return strings.get(checkSeverity.get(check));
+                default:
+                    return strings.get(checkState.get(check));
+            }
+        }
+
+        private boolean isVisible(int jobId) {
+            if (jobVisibility[jobId] == 0) {
+                jobVisibility[jobId] = jobFilter.test(strings.get(jobId)) ? (byte) 1 : (byte) 2;
+            }
+            return jobVisibility[jobId] == 1;
+        }
+
+        // first report recorded at or after time
+        private int lowerBound(long time) {
+            int low = 0;
+            int high = reportTime.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (reportTime.get(mid) < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private int lowerBoundChecks(IntColumn checks, int firstCheck) {
+            int low = 0;
+            int high = checks.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (checks.get(mid) < firstCheck) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    static final class IntColumn {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    static final class LongColumn {
+        private long[] values = new long[16];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import hudson.model.Run;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+ Checks session opened by withGoogleChecks and put in the context of its body: the steps nested in the block, including
+ the ones of parallel branches, default to its settings and share its client instead of authenticating each on their own.
+
+ Only the settings are serialized with the pipeline. The client lives in a static registry, it is created again on
+ first use after a restart and closed when the block exits.
+ */
+public final class ChecksSession implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Map<String, Client> CLIENTS = new ConcurrentHashMap<>();
+
+    private final String id = UUID.randomUUID().toString();
+    private final String baseUrl;
+    private final String projectId;
+    private final String accountId;
+    private final String credentialsId;
+
+    public ChecksSession(String baseUrl, String projectId, String accountId, String credentialsId) {
+        this.baseUrl = baseUrl;
+        this.projectId = projectId;
+        this.accountId = accountId;
+        this.credentialsId = credentialsId;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public String getProjectId() {
+        return projectId;
+    }
+
+    public String getAccountId() {
+        return accountId;
+    }
+
+    public String getCredentialsId() {
+        return credentialsId;
+    }
+
+    public Client getClient() {
+        return CLIENTS.computeIfAbsent(id, k -> new Client(credentialsId));
+    }
+
+    public void close() {
+        CLIENTS.remove(id);
+    }
+
+    static int getOpenSessions() {
+        return CLIENTS.size();
+    }
+
+    /*
+     Access token shared by the steps of the session. Concurrent steps wait for the same authentication instead of
+     each resolving and parsing the credentials.
+     */
+    public static final class Client {
+        // GoogleCredentialsHelper returns tokens valid for a few more minutes at least
+        private static final long TOKEN_REUSE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+        private final String credentialsId;
+        private String accessToken;
+        private long authenticatedAt;
+
+        Client(String credentialsId) {
+            this.credentialsId = credentialsId;
+        }
+
+        public synchronized String getAccessToken(Run<?, ?> run) throws IOException {
+            long now = System.currentTimeMillis();
+            if (accessToken == null || now - authenticatedAt > TOKEN_REUSE_MILLIS) {
+                accessToken = GoogleCredentialsHelperFactory.getInstance().getOrCreateGoogleCredentialsHelper().authenticate(credentialsId, run);
+                authenticatedAt = now;
+            }
+            return accessToken;
+        }
+    }
+}
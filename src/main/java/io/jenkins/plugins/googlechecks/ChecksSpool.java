@@ -0,0 +1,279 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import com.google.api.client.http.HttpResponseException;
+import com.google.auth.oauth2.GoogleAuthException;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.Util;
+import hudson.XmlFile;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ Uploads that failed because the API or the network was down, kept in JENKINS_HOME/google-checks/spool until
+ ChecksSpoolDrainer sends them. Each entry is a directory with a copy of the binary and entry.xml.
+ The spool is bounded in bytes: when it is full, the step fails as it would without spooling.
+ */
+@Extension
+public class ChecksSpool {
+    private static final Logger LOGGER = Logger.getLogger(ChecksSpool.class.getName());
+    static final long MAX_BYTES = SystemProperties.getLong(ChecksSpool.class.getName() + ".maxBytes", 10L * 1024 * 1024 * 1024);
+
+    private final File dir;
+
+    public ChecksSpool() {
+        this(new File(Jenkins.get().getRootDir(), "google-checks/spool"));
+    }
+
+    ChecksSpool(File dir) {
+        this.dir = dir;
+    }
+
+    public static ChecksSpool get() {
+        return ExtensionList.lookupSingleton(ChecksSpool.class);
+    }
+
+    /*
+     Whether an upload failing with this error is worth trying again later: the API or the network being unreachable,
+     throttling, server errors and transient token refresh failures. Anything else, e.g. a wrong binary path,
+     malformed service account JSON or a revoked key, won't get better by waiting.
+     */
+    public static boolean isRetryable(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpResponseException) {
+                int status = ((HttpResponseException) cause).getStatusCode();
+                return status == 408 || status == 429 || status >= 500;
+            }
+            if (cause instanceof GoogleAuthException) {
+                return ((GoogleAuthException) cause).isRetryable();
+            }
+            if (isUnreachable(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     Whether the API couldn't be reached at all, as opposed to an answer that is an error.
+     */
+    public static boolean isUnreachable(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof NoRouteToHostException || cause instanceof UnknownHostException
+                    || cause instanceof SocketTimeoutException || cause instanceof HttpTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public interface Source {
+        InputStream open() throws IOException;
+    }
+
+    public Entry spool(Entry entry, Path binary) throws IOException {
+        return spool(entry, Files.size(binary), () -> Files.newInputStream(binary));
+    }
+
+    public synchronized Entry spool(Entry entry, long size, Source binary) throws IOException {
+        long used = getUsedBytes();
+        if (used + size > MAX_BYTES) {
+            throw new IOException(String.format("The upload spool is full (%s used, %s allowed)",
+                    Util.getDiskSizeString(used / 1024), Util.getDiskSizeString(MAX_BYTES / 1024)));
+        }
+        entry.id = UUID.randomUUID().toString();
+        entry.size = size;
+        File entryDir = new File(dir, entry.id);
+        Files.createDirectories(entryDir.toPath());
+        try {
+            try (InputStream in = binary.open()) {
+                Files.copy(in, new File(entryDir, entry.binaryName).toPath());
+            }
+            save(entry);
+        } catch (IOException e) {
+            Util.deleteRecursive(entryDir);
+            throw e;
+        }
+        return entry;
+    }
+
+    public synchronized void save(Entry entry) throws IOException {
+        new XmlFile(Jenkins.XSTREAM2, new File(new File(dir, entry.id), "entry.xml")).write(entry);
+    }
+
+    public synchronized void remove(Entry entry) {
+        try {
+            Util.deleteRecursive(new File(dir, entry.id));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to delete the spooled upload " + entry.id, e);
+        }
+    }
+
+    public Path getBinary(Entry entry) {
+        return new File(new File(dir, entry.id), entry.binaryName).toPath();
+    }
+
+    /*
+     Entries in the order they were spooled.
+     */
+    public synchronized List<Entry> list() {
+        List<Entry> entries = new ArrayList<>();
+        File[] children = dir.listFiles(File::isDirectory);
+        if (children == null) {
+            return entries;
+        }
+        for (File child : children) {
+            XmlFile file = new XmlFile(Jenkins.XSTREAM2, new File(child, "entry.xml"));
+            if (!file.exists()) {
+                continue;
+            }
+            try {
+                entries.add((Entry) file.read());
+            } catch (IOException | ClassCastException e) {
+                LOGGER.log(Level.WARNING, "Failed to read " + file, e);
+            }
+        }
+        entries.sort(Comparator.comparingLong(Entry::getSpooledAt));
+        return entries;
+    }
+
+    private long getUsedBytes() {
+        long used = 0;
+        for (Entry entry : list()) {
+            used += entry.size;
+        }
+        return used;
+    }
+
+    public static class Entry {
+        private String id;
+        private long size;
+        private final String baseUrl;
+        private final String projectId;
+        private final String accountId;
+        private final String appId;
+        private final String credentialsId;
+        private final String runId;
+        private final String binaryName;
+        private final SeverityThreshold severityThreshold;
+        private final String policy;
+        private final long spooledAt = System.currentTimeMillis();
+        private String operationId;
+        private int attempts;
+        private String lastError;
+
+        public Entry(String baseUrl, String projectId, String accountId, String appId, String credentialsId, String runId,
+                     String binaryName, SeverityThreshold severityThreshold, String policy) {
+            this.baseUrl = baseUrl;
+            this.projectId = projectId;
+            this.accountId = accountId;
+            this.appId = appId;
+            this.credentialsId = credentialsId;
+            this.runId = runId;
+            this.binaryName = binaryName;
+            this.severityThreshold = severityThreshold;
+            this.policy = policy;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        public String getProjectId() {
+            return projectId;
+        }
+
+        public String getAccountId() {
+            return accountId;
+        }
+
+        public String getAppId() {
+            return appId;
+        }
+
+        public String getCredentialsId() {
+            return credentialsId;
+        }
+
+        public String getRunId() {
+            return runId;
+        }
+
+        public String getBinaryName() {
+            return binaryName;
+        }
+
+        public SeverityThreshold getSeverityThreshold() {
+            return severityThreshold == null ? SeverityThreshold.PRIORITY : severityThreshold;
+        }
+
+        public String getPolicy() {
+            return policy;
+        }
+
+        public long getSpooledAt() {
+            return spooledAt;
+        }
+
+        // set once uploaded, the drainer then waits for the report
+        public String getOperationId() {
+            return operationId;
+        }
+
+        void setOperationId(String operationId) {
+            this.operationId = operationId;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public String getLastError() {
+            return lastError;
+        }
+
+        void failed(Exception e) {
+            attempts++;
+            lastError = e.toString();
+        }
+    }
+}
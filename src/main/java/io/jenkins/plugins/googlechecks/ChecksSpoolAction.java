@@ -0,0 +1,112 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import hudson.model.Action;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ Outcome of an upload of the build that was spooled, shown on the build page and updated by ChecksSpoolDrainer.
+ */
+public class ChecksSpoolAction implements Action {
+    public enum Status {
+        SPOOLED,
+        UPLOADED,
+        COMPLETED,
+        EXPIRED
+    }
+
+    private final String spoolId;
+    private final String binaryName;
+    private Status status = Status.SPOOLED;
+    private String operationId;
+    private String resultsUri;
+    private Boolean passed;
+    private List<String> failingChecks = new ArrayList<>();
+    private String message;
+
+    public ChecksSpoolAction(String spoolId, String binaryName) {
+        this.spoolId = spoolId;
+        this.binaryName = binaryName;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Spooled Google Checks upload";
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+    public String getSpoolId() {
+        return spoolId;
+    }
+
+    public String getBinaryName() {
+        return binaryName;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getOperationId() {
+        return operationId;
+    }
+
+    public String getResultsUri() {
+        return resultsUri;
+    }
+
+    // null until the report is there
+    public Boolean getPassed() {
+        return passed;
+    }
+
+    public List<String> getFailingChecks() {
+        return failingChecks == null ? Collections.emptyList() : Collections.unmodifiableList(failingChecks);
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    void uploaded(String operationId) {
+        this.status = Status.UPLOADED;
+        this.operationId = operationId;
+    }
+
+    void completed(String resultsUri, boolean passed, List<String> failingChecks) {
+        this.status = Status.COMPLETED;
+        this.resultsUri = resultsUri;
+        this.passed = passed;
+        this.failingChecks = new ArrayList<>(failingChecks);
+    }
+
+    void expired(String message) {
+        this.status = Status.EXPIRED;
+        this.message = message;
+    }
+}
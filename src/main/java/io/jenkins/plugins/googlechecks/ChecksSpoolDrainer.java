@@ -0,0 +1,182 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import io.jenkins.plugins.googlechecks.models.GoogleChecksOperation;
+import io.jenkins.plugins.googlechecks.models.GoogleChecksReport;
+import io.jenkins.plugins.googlechecks.models.GoogleChecksUpload;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ Sends the uploads of ChecksSpool, a few at a time, then waits for their reports across runs of the task and
+ attaches them to the builds that spooled them.
+ When the API is still unreachable, the current run ends: the next ones try again. Other retryable failures (throttling,
+ server errors) only leave the entry for the next run, and an entry failing too many times or for a reason that won't go
+ away is dropped, so that one bad entry doesn't hold back the others.
+ */
+@Extension
+public class ChecksSpoolDrainer extends AsyncPeriodicWork {
+    private static final Logger LOGGER = Logger.getLogger(ChecksSpoolDrainer.class.getName());
+    private static final long RECURRENCE_SECONDS = SystemProperties.getLong(ChecksSpoolDrainer.class.getName() + ".recurrenceSeconds", 60L);
+    static final int CONCURRENCY = SystemProperties.getInteger(ChecksSpoolDrainer.class.getName() + ".concurrency", 2);
+    private static final long MAX_AGE = TimeUnit.HOURS.toMillis(SystemProperties.getLong(ChecksSpoolDrainer.class.getName() + ".maxAgeHours", 7 * 24L));
+    static final int MAX_ATTEMPTS = SystemProperties.getInteger(ChecksSpoolDrainer.class.getName() + ".maxAttempts", 50);
+
+    public ChecksSpoolDrainer() {
+        super("Google Checks upload spool");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.SECONDS.toMillis(RECURRENCE_SECONDS);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws InterruptedException {
+        ChecksSpool spool = ChecksSpool.get();
+        try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+            List<ChecksSpool.Entry> pending = new ArrayList<>();
+            for (ChecksSpool.Entry entry : spool.list()) {
+                if (System.currentTimeMillis() - entry.getSpooledAt() > MAX_AGE) {
+                    listener.getLogger().printf("Dropping spooled upload %s, last error: %s%n", entry.getId(), entry.getLastError());
+                    updateAction(entry, action -> action.expired("not sent within " + TimeUnit.MILLISECONDS.toHours(MAX_AGE) + " hours, last error: " + entry.getLastError()));
+                    spool.remove(entry);
+                } else {
+                    pending.add(entry);
+                }
+            }
+            // in spooling order, CONCURRENCY entries at a time
+            for (int i = 0; i < pending.size(); i += CONCURRENCY) {
+                List<Future<Boolean>> batch = new ArrayList<>();
+                for (ChecksSpool.Entry entry : pending.subList(i, Math.min(i + CONCURRENCY, pending.size()))) {
+                    batch.add(ChecksExecutors.get().submit(() -> drain(spool, entry, listener)));
+                }
+                boolean unreachable = false;
+                for (Future<Boolean> result : batch) {
+                    try {
+                        unreachable |= !result.get();
+                    } catch (ExecutionException e) {
+                        listener.error("Unexpected failure: %s", e.getCause());
+                    }
+                }
+                if (unreachable) {
+                    listener.getLogger().println("The Checks API is still unreachable, trying again later");
+                    return;
+                }
+            }
+        }
+    }
+
+    /*
+     Uploads the entry, or checks on its operation if already uploaded. Returns false if the API is unreachable.
+     */
+    private boolean drain(ChecksSpool spool, ChecksSpool.Entry entry, TaskListener listener) throws IOException {
+        Run<?, ?> run = entry.getRunId() == null ? null : Run.fromExternalizableId(entry.getRunId());
+        GoogleChecks checks = new GoogleChecks(entry.getBaseUrl(), entry.getProjectId(), entry.getAccountId(), entry.getAppId());
+        try {
+            checks.authenticate(entry.getCredentialsId(), run);
+            if (entry.getOperationId() == null) {
+                GoogleChecksUpload response = checks.uploadBinary(spool.getBinary(entry).toString(),
+                        GoogleChecksConfiguration.get().getUploadLimiters(Jenkins.get()));
+                entry.setOperationId(GoogleChecks.getOperationIdFromName(response.name));
+                spool.save(entry);
+                listener.getLogger().printf("Uploaded spooled %s of %s, operationId=%s%n", entry.getBinaryName(), entry.getRunId(), entry.getOperationId());
+                updateAction(entry, action -> action.uploaded(entry.getOperationId()));
+                return true;
+            }
+            GoogleChecksOperation operation = checks.checkOperation(entry.getOperationId());
+            if (operation.done == null || !operation.done) {
+                return true;
+            }
+            GoogleChecksReport report = checks.getReport(GoogleChecks.getReportIdFromName(operation.response.name));
+            List<String> failingChecks;
+            boolean passed;
+            if (entry.getPolicy() != null) {
+                GatingPolicy.Result result = GatingPolicy.compile(entry.getPolicy()).evaluate(report.checks);
+                failingChecks = result.getFailingChecks();
+                passed = result.isValid();
+            } else {
+                failingChecks = GoogleChecks.validateReport(report.checks == null ? Collections.emptyList() : report.checks, entry.getSeverityThreshold());
+                passed = failingChecks.isEmpty();
+            }
+            ChecksResultsStore.get().record(entry.getAccountId(), entry.getAppId(), run == null ? "" : run.getParent().getFullName(),
+                    run == null ? 0 : run.getNumber(), report.name, report.checks == null ? Collections.emptyList() : report.checks);
+            if (run != null) {
+                ChecksDashboard.get().update(entry.getAccountId(), entry.getAppId(), run, report, operation.response.resultsUri, passed);
+            }
+            updateAction(entry, action -> action.completed(operation.response.resultsUri, passed, failingChecks));
+            listener.getLogger().printf("Report of spooled %s of %s: %d issue(s)%n", entry.getBinaryName(), entry.getRunId(), failingChecks.size());
+            spool.remove(entry);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            entry.failed(e);
+            if (!ChecksSpool.isRetryable(e)) {
+                // e.g. the credentials are gone, trying again won't help
+                listener.error("Dropping spooled upload %s: %s", entry.getId(), e);
+                updateAction(entry, action -> action.expired(e.toString()));
+                spool.remove(entry);
+                return true;
+            }
+            if (entry.getAttempts() >= MAX_ATTEMPTS) {
+                listener.error("Dropping spooled upload %s after %d attempts: %s", entry.getId(), entry.getAttempts(), e);
+                updateAction(entry, action -> action.expired("failed " + entry.getAttempts() + " times, last error: " + e));
+                spool.remove(entry);
+                return true;
+            }
+            spool.save(entry);
+            return !ChecksSpool.isUnreachable(e);
+        }
+    }
+
+    private interface ActionUpdate {
+        void apply(ChecksSpoolAction action);
+    }
+
+    private static void updateAction(ChecksSpool.Entry entry, ActionUpdate update) {
+        Run<?, ?> run = entry.getRunId() == null ? null : Run.fromExternalizableId(entry.getRunId());
+        if (run == null) {
+            return;
+        }
+        for (ChecksSpoolAction action : run.getActions(ChecksSpoolAction.class)) {
+            if (action.getSpoolId().equals(entry.getId())) {
+                synchronized (run) {
+                    update.apply(action);
+                    try {
+                        run.save();
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Failed to save " + run, e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import io.jenkins.plugins.checks.api.ChecksAnnotation;
+import io.jenkins.plugins.checks.api.ChecksConclusion;
+import io.jenkins.plugins.checks.api.ChecksDetails;
+import io.jenkins.plugins.checks.api.ChecksOutput;
+import io.jenkins.plugins.checks.api.ChecksPublisherFactory;
+import io.jenkins.plugins.checks.api.ChecksStatus;
+import io.jenkins.plugins.googlechecks.models.GoogleChecksCheck;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ Publishes the progress of the steps with publishChecks to the SCM (e.g. GitHub checks) through the checks-api plugin:
+ queued, uploading, analyzing, then the conclusion with the failed checks as annotations.
+
+ Updates are coalesced: an update replaces the pending one of the same check, a check isn't updated more often than
+ every MIN_INTERVAL_MILLIS unless it completes, and at most MAX_PER_SECOND updates are sent per second overall.
+ The updates of a check are sent one at a time, in order: the next one waits in pending (and may be replaced) until the
+ previous one is published, so that e.g. a slow progress update can't land after the conclusion.
+ */
+public final class ChecksStatusPublisher {
+    private static final Logger LOGGER = Logger.getLogger(ChecksStatusPublisher.class.getName());
+    private static final ChecksStatusPublisher INSTANCE = new ChecksStatusPublisher();
+
+    static final long MIN_INTERVAL_MILLIS = SystemProperties.getLong(ChecksStatusPublisher.class.getName() + ".minIntervalMillis", 10_000L);
+    static final int MAX_PER_SECOND = SystemProperties.getInteger(ChecksStatusPublisher.class.getName() + ".maxPerSecond", 10);
+    // GitHub takes 50 annotations per request, more would only be noise anyway
+    private static final int MAX_ANNOTATIONS = 200;
+
+    public enum Stage {
+        QUEUED("Waiting for an upload slot"),
+        UPLOADING("Uploading the binary"),
+        ANALYZING("Analyzing the binary");
+
+        private final String title;
+
+        Stage(String title) {
+            this.title = title;
+        }
+    }
+
+    private final Map<String, Update> pending = new LinkedHashMap<>();
+    private final Map<String, Long> lastPublished = new LinkedHashMap<>();
+    private final Set<String> publishing = new HashSet<>();
+    private boolean flushScheduled;
+
+    private ChecksStatusPublisher() {
+    }
+
+    public static ChecksStatusPublisher get() {
+        return INSTANCE;
+    }
+
+    public void progress(Run<?, ?> run, TaskListener listener, String name, Stage stage, String detailsUrl) {
+        ChecksDetails.ChecksDetailsBuilder details = new ChecksDetails.ChecksDetailsBuilder()
+                .withName(name)
+                .withStatus(stage == Stage.QUEUED ? ChecksStatus.QUEUED : ChecksStatus.IN_PROGRESS)
+                .withStartedAt(LocalDateTime.now())
+                .withOutput(new ChecksOutput.ChecksOutputBuilder().withTitle(stage.title).withSummary(stage.title).build());
+        if (detailsUrl != null) {
+            details.withDetailsURL(detailsUrl);
+        }
+        enqueue(run, listener, name, details.build(), false);
+    }
+
+    public void completed(Run<?, ?> run, TaskListener listener, String name, String path, String resultsUri,
+                          List<GoogleChecksCheck> checks, boolean valid, boolean failing) {
+        Map<String, Integer> failedBySeverity = new LinkedHashMap<>();
+        failedBySeverity.put("PRIORITY", 0);
+        failedBySeverity.put("POTENTIAL", 0);
+        failedBySeverity.put("OPPORTUNITY", 0);
+        List<ChecksAnnotation> annotations = new ArrayList<>();
+        int failed = 0;
+        for (GoogleChecksCheck check : checks) {
+            if (!"FAILED".equals(check.state)) {
+                continue;
+            }
+            failed++;
+            failedBySeverity.merge(String.valueOf(check.severity), 1, Integer::sum);
+            if (annotations.size() < MAX_ANNOTATIONS) {
+                annotations.add(new ChecksAnnotation.ChecksAnnotationBuilder()
+                        .withPath(path)
+                        .withLine(1)
+                        .withAnnotationLevel(annotationLevel(check.severity))
+                        .withTitle(check.type)
+                        .withMessage(String.format("%s (%s)", check.type, check.severity))
+                        .build());
+            }
+        }
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("%d of %d checks failed.%n%n| Severity | Failed |%n| --- | --- |%n", failed, checks.size()));
+        for (Map.Entry<String, Integer> severity : failedBySeverity.entrySet()) {
+            summary.append(String.format("| %s | %d |%n", severity.getKey(), severity.getValue()));
+        }
+        if (resultsUri != null) {
+            summary.append(String.format("%n[Open the report in Google Checks](%s)%n", resultsUri));
+        }
+        ChecksConclusion conclusion = valid ? ChecksConclusion.SUCCESS : failing ? ChecksConclusion.FAILURE : ChecksConclusion.NEUTRAL;
+        ChecksDetails.ChecksDetailsBuilder details = new ChecksDetails.ChecksDetailsBuilder()
+                .withName(name)
+                .withStatus(ChecksStatus.COMPLETED)
+                .withConclusion(conclusion)
+                .withCompletedAt(LocalDateTime.now())
+                .withOutput(new ChecksOutput.ChecksOutputBuilder()
+                        .withTitle(valid ? "No issues detected" : String.format("%d issue(s) detected", failed))
+                        .withSummary(summary.toString())
+                        .withAnnotations(annotations)
+                        .build());
+        if (resultsUri != null) {
+            details.withDetailsURL(resultsUri);
+        }
+        enqueue(run, listener, name, details.build(), true);
+    }
+
+    public void failed(Run<?, ?> run, TaskListener listener, String name, ChecksConclusion conclusion, String message) {
+        ChecksDetails details = new ChecksDetails.ChecksDetailsBuilder()
+                .withName(name)
+                .withStatus(ChecksStatus.COMPLETED)
+                .withConclusion(conclusion)
+                .withCompletedAt(LocalDateTime.now())
+                .withOutput(new ChecksOutput.ChecksOutputBuilder().withTitle(message).withSummary(message).build())
+                .build();
+        enqueue(run, listener, name, details, true);
+    }
+
+    private static ChecksAnnotation.ChecksAnnotationLevel annotationLevel(String severity) {
+        if ("PRIORITY".equals(severity)) {
+            return ChecksAnnotation.ChecksAnnotationLevel.FAILURE;
+        }
+        if ("POTENTIAL".equals(severity)) {
+            return ChecksAnnotation.ChecksAnnotationLevel.WARNING;
+        }
+        return ChecksAnnotation.ChecksAnnotationLevel.NOTICE;
+    }
+
+    private synchronized void enqueue(Run<?, ?> run, TaskListener listener, String name, ChecksDetails details, boolean terminal) {
+        String key = run.getExternalizableId() + '\u0000' + name;
+        Update previous = pending.get(key);
+        if (previous != null && previous.terminal && !terminal) {
+            // a late progress update doesn't replace the conclusion
+            return;
+        }
+        pending.put(key, new Update(key, run, listener, details, terminal));
+        scheduleFlush();
+    }
+
+    private synchronized void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            Timer.get().schedule(this::flush, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush() {
+        List<Update> due = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            Iterator<Map.Entry<String, Update>> it = pending.entrySet().iterator();
+            while (it.hasNext() && due.size() < MAX_PER_SECOND) {
+                Map.Entry<String, Update> entry = it.next();
+                if (publishing.contains(entry.getKey())) {
+                    // sent once the previous update of the check is published
+                    continue;
+                }
+                Long last = lastPublished.get(entry.getKey());
+                if (entry.getValue().terminal || last == null || now - last >= MIN_INTERVAL_MILLIS) {
+                    due.add(entry.getValue());
+                    publishing.add(entry.getKey());
+                    it.remove();
+                    if (entry.getValue().terminal) {
+                        lastPublished.remove(entry.getKey());
+                    } else {
+                        lastPublished.put(entry.getKey(), now);
+                    }
+                }
+            }
+            flushScheduled = !pending.isEmpty();
+            if (flushScheduled) {
+                Timer.get().schedule(this::flush, 1, TimeUnit.SECONDS);
+            }
+        }
+        for (Update update : due) {
+            // the publishers call the SCM API
+            try {
+                ChecksExecutors.get().submit(() -> publish(update));
+            } catch (RejectedExecutionException e) {
+                LOGGER.log(Level.WARNING, "Failed to publish the Google Checks status of " + update.run, e);
+                published(update);
+            }
+        }
+    }
+
+    private void publish(Update update) {
+        try {
+            ChecksPublisherFactory.fromRun(update.run, update.listener).publish(update.details);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to publish the Google Checks status of " + update.run, e);
+        } finally {
+            published(update);
+        }
+    }
+
+    private synchronized void published(Update update) {
+        publishing.remove(update.key);
+        if (pending.containsKey(update.key)) {
+            scheduleFlush();
+        }
+    }
+
+    private static final class Update {
+        final String key;
+        final Run<?, ?> run;
+        final TaskListener listener;
+        final ChecksDetails details;
+        final boolean terminal;
+
+        Update(String key, Run<?, ?> run, TaskListener listener, ChecksDetails details, boolean terminal) {
+            this.key = key;
+            this.run = run;
+            this.listener = listener;
+            this.details = details;
+            this.terminal = terminal;
+        }
+    }
+}
@@ -0,0 +1,363 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.XmlFile;
+import hudson.init.Terminator;
+import hudson.model.ManagementLink;
+import hudson.model.PeriodicWork;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import hudson.security.Permission;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+import org.kohsuke.stapler.verb.GET;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ Calls to the Checks API made by each job for each Google Cloud project, to see who uses the shared quotas:
+ uploads and bytes sent, operation polls, report fetches, and uploads of a binary already uploaded by the same job
+ for the same app.
+
+ Counting only touches memory, the counters are written to JENKINS_HOME/google-checks/usage.xml every minute and on
+ shutdown. Shown under Manage Jenkins > Google Checks usage, and as JSON at JENKINS_URL/manage/google-checks-usage/json.
+ */
+@Extension
+public class ChecksUsage extends ManagementLink implements Saveable {
+    private static final Logger LOGGER = Logger.getLogger(ChecksUsage.class.getName());
+    // sha256 of the latest uploads remembered per job and app to spot duplicates
+    private static final int RECENT_UPLOADS = 20;
+
+    // by job full name and projectId
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+    private long since = System.currentTimeMillis();
+    private transient Map<String, LinkedHashMap<String, Boolean>> recentUploads = new ConcurrentHashMap<>();
+    private transient volatile boolean dirty;
+
+    public ChecksUsage() {
+        XmlFile file = getConfigFile();
+        if (file.exists()) {
+            try {
+                file.unmarshal(this);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to load " + file, e);
+            }
+        }
+    }
+
+    // XStream doesn't run the constructor
+    private Object readResolve() {
+        recentUploads = new ConcurrentHashMap<>();
+        return this;
+    }
+
+    public static ChecksUsage get() {
+        return ExtensionList.lookupSingleton(ChecksUsage.class);
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "clipboard.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Google Checks usage";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Calls to the Google Checks API per job and Google Cloud project.";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "google-checks-usage";
+    }
+
+    @Override
+    public Permission getRequiredPermission() {
+        return Jenkins.ADMINISTER;
+    }
+
+    @Override
+    public Category getCategory() {
+        return Category.STATUS;
+    }
+
+    private Counters counters(String job, String projectId) {
+        String jobName = job == null ? "" : job;
+        String project = projectId == null ? "" : projectId;
+        dirty = true;
+        return counters.computeIfAbsent(jobName + '\u0000' + project, k -> new Counters(jobName, project));
+    }
+
+    public void recordUpload(String job, String projectId, String appId, long bytes, String sha256) {
+        boolean duplicate = false;
+        if (sha256 != null) {
+            LinkedHashMap<String, Boolean> recent = recentUploads.computeIfAbsent(job + '\u0000' + appId, k -> new LinkedHashMap<>());
+            synchronized (recent) {
+                duplicate = recent.remove(sha256) != null;
+                recent.put(sha256, Boolean.TRUE);
+                if (recent.size() > RECENT_UPLOADS) {
+                    recent.remove(recent.keySet().iterator().next());
+                }
+            }
+        }
+        counters(job, projectId).upload(bytes, duplicate);
+    }
+
+    public void recordPoll(String job, String projectId) {
+        counters(job, projectId).poll();
+    }
+
+    public void recordReportFetch(String job, String projectId) {
+        counters(job, projectId).reportFetch();
+    }
+
+    public long getSince() {
+        return since;
+    }
+
+    public Date getSinceDate() {
+        return new Date(since);
+    }
+
+    /*
+     Counters summed by job, folder (parent of the job, empty at the top level), projectId, or job and projectId
+     when groupBy is null. Most polls first, the usual suspect when a quota runs out.
+     */
+    public List<Counters> getUsage(String groupBy) {
+        Map<String, Counters> groups = new TreeMap<>();
+        for (Counters c : counters.values()) {
+            String job;
+            String project;
+            if (groupBy == null || groupBy.isEmpty()) {
+                job = c.getJob();
+                project = c.getProjectId();
+            } else if (groupBy.equals("job")) {
+                job = c.getJob();
+                project = null;
+            } else if (groupBy.equals("folder")) {
+                int slash = c.getJob().lastIndexOf('/');
+                job = slash < 0 ? "" : c.getJob().substring(0, slash);
+                project = null;
+            } else if (groupBy.equals("project")) {
+                job = null;
+                project = c.getProjectId();
+            } else {
+                throw new IllegalArgumentException("groupBy must be job, folder or project, got " + groupBy);
+            }
+            groups.computeIfAbsent(job + '\u0000' + project, k -> new Counters(job, project)).add(c);
+        }
+        List<Counters> usage = new ArrayList<>(groups.values());
+        usage.sort(Comparator.comparingLong(Counters::getPolls).reversed());
+        return usage;
+    }
+
+    public List<Counters> getUsage() {
+        return getUsage(null);
+    }
+
+    @GET
+    public HttpResponse doJson(@QueryParameter String groupBy) {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        List<Counters> usage;
+        try {
+            usage = getUsage(groupBy);
+        } catch (IllegalArgumentException e) {
+            return HttpResponses.errorJSON(e.getMessage());
+        }
+        JSONArray rows = new JSONArray();
+        for (Counters c : usage) {
+            JSONObject row = new JSONObject();
+            if (c.getJob() != null) {
+                row.put(groupBy != null && groupBy.equals("folder") ? "folder" : "job", c.getJob());
+            }
+            if (c.getProjectId() != null) {
+                row.put("projectId", c.getProjectId());
+            }
+            row.put("uploads", c.getUploads());
+            row.put("bytesSent", c.getBytesSent());
+            row.put("duplicateUploads", c.getDuplicateUploads());
+            row.put("polls", c.getPolls());
+            row.put("reportFetches", c.getReportFetches());
+            row.put("lastCall", c.getLastCall());
+            rows.add(row);
+        }
+        JSONObject json = new JSONObject();
+        json.put("since", since);
+        json.put("usage", rows);
+        return HttpResponses.okJSON(json);
+    }
+
+    @RequirePOST
+    public HttpResponse doReset() throws IOException {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        counters.clear();
+        since = System.currentTimeMillis();
+        dirty = true;
+        flush();
+        return HttpResponses.redirectToDot();
+    }
+
+    /*
+     Writes the counters if they changed since the last time.
+     */
+    void flush() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        try {
+            save();
+        } catch (IOException e) {
+            dirty = true;
+            LOGGER.log(Level.WARNING, "Failed to save the Google Checks usage", e);
+        }
+    }
+
+    @Override
+    public synchronized void save() throws IOException {
+        XmlFile file = getConfigFile();
+        file.write(this);
+        SaveableListener.fireOnChange(this, file);
+    }
+
+    private static XmlFile getConfigFile() {
+        return new XmlFile(Jenkins.XSTREAM2, new File(Jenkins.get().getRootDir(), "google-checks/usage.xml"));
+    }
+
+    @Terminator
+    public static void flushOnShutdown() {
+        ChecksUsage usage = ExtensionList.lookup(ChecksUsage.class).get(ChecksUsage.class);
+        if (usage != null) {
+            usage.flush();
+        }
+    }
+
+    @Extension
+    public static class Flusher extends PeriodicWork {
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.MINUTES.toMillis(1);
+        }
+
+        @Override
+        protected void doRun() {
+            ChecksUsage.get().flush();
+        }
+    }
+
+    public static class Counters {
+        private final String job;
+        private final String projectId;
+        private long uploads;
+        private long bytesSent;
+        private long duplicateUploads;
+        private long polls;
+        private long reportFetches;
+        private long lastCall;
+
+        Counters(String job, String projectId) {
+            this.job = job;
+            this.projectId = projectId;
+        }
+
+        synchronized void upload(long bytes, boolean duplicate) {
+            uploads++;
+            bytesSent += bytes;
+            if (duplicate) {
+                duplicateUploads++;
+            }
+            lastCall = System.currentTimeMillis();
+        }
+
+        synchronized void poll() {
+            polls++;
+            lastCall = System.currentTimeMillis();
+        }
+
+        synchronized void reportFetch() {
+            reportFetches++;
+            lastCall = System.currentTimeMillis();
+        }
+
+        void add(Counters other) {
+            synchronized (other) {
+                uploads += other.uploads;
+                bytesSent += other.bytesSent;
+                duplicateUploads += other.duplicateUploads;
+                polls += other.polls;
+                reportFetches += other.reportFetches;
+                lastCall = Math.max(lastCall, other.lastCall);
+            }
+        }
+
+        // null when grouped by project
+        public String getJob() {
+            return job;
+        }
+
+        // null when grouped by job or folder
+        public String getProjectId() {
+            return projectId;
+        }
+
+        public synchronized long getUploads() {
+            return uploads;
+        }
+
+        public synchronized long getBytesSent() {
+            return bytesSent;
+        }
+
+        public synchronized long getDuplicateUploads() {
+            return duplicateUploads;
+        }
+
+        public synchronized long getPolls() {
+            return polls;
+        }
+
+        public synchronized long getReportFetches() {
+            return reportFetches;
+        }
+
+        public synchronized long getLastCall() {
+            return lastCall;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import com.cloudbees.plugins.credentials.CredentialsMatchers;
+import com.cloudbees.plugins.credentials.CredentialsParameterValue;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.ParameterValue;
+import hudson.model.ParametersAction;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.model.User;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
+import hudson.model.queue.Tasks;
+import hudson.security.ACL;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.plugins.plaincredentials.StringCredentials;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ Resolves the credentials of a step by id, in the context of its run so that folder-scoped credentials are found.
+
+ Listing every credential of the instance on each build is expensive on instances with thousands of them,
+ so resolutions are cached by (job, authentication, id). Credentials passed as a build parameter are looked up
+ as the user who triggered the build, so those are never cached; neither is a failed resolution. The cache is invalidated when a credentials store is saved: the
+ system store, a folder (folder stores are saved with the folder) or a user, and when a job is renamed or deleted.
+ Entries also expire after a while for providers that aren't saved through Jenkins (e.g. external secret managers).
+
+ Credentials the run can't see, e.g. System scoped credentials of the root store, are still looked up in the root store
+ as the plugin always did, with a warning: they should be moved to the Global scope.
+ */
+public final class CredentialsResolutionCache {
+    private static final Logger LOGGER = Logger.getLogger(CredentialsResolutionCache.class.getName());
+    static final long TTL_MILLIS = TimeUnit.SECONDS.toMillis(SystemProperties.getLong(CredentialsResolutionCache.class.getName() + ".ttlSeconds", 300L));
+
+    private static final CredentialsResolutionCache INSTANCE = new CredentialsResolutionCache();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // bumped on every invalidation, so that a resolution running during an invalidation isn't cached
+    private final AtomicLong generation = new AtomicLong();
+
+    private static final class Entry {
+        final StringCredentials credentials;
+        final long generation;
+        final long loadedAt;
+
+        Entry(StringCredentials credentials, long generation, long loadedAt) {
+            this.credentials = credentials;
+            this.generation = generation;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    public static CredentialsResolutionCache get() {
+        return INSTANCE;
+    }
+
+    public StringCredentials resolve(String credentialsId, Run<?, ?> run) {
+        if (run != null && isParameter(credentialsId, run)) {
+            // only what the triggering user can see, no fallback to the root store
+            return CredentialsProvider.findCredentialById(credentialsId, StringCredentials.class, run);
+        }
+        String key = keyOf(run) + '\u0000' + credentialsId;
+        long now = System.currentTimeMillis();
+        long currentGeneration = generation.get();
+        Entry entry = entries.get(key);
+        if (entry != null && entry.generation == currentGeneration && now - entry.loadedAt < TTL_MILLIS) {
+            if (run != null) {
+                // findCredentialById records the usage on the run, a cache hit has to as well
+                CredentialsProvider.track(run, entry.credentials);
+            }
+            return entry.credentials;
+        }
+        StringCredentials credentials = lookup(credentialsId, run);
+        if (credentials != null) {
+            entries.put(key, new Entry(credentials, currentGeneration, now));
+        }
+        return credentials;
+    }
+
+    private static String keyOf(Run<?, ?> run) {
+        if (run == null) {
+            return "";
+        }
+        // the lookup runs with the authentication of the job (e.g. authorize-project), which may differ between jobs and runs
+        String authentication = run.getParent() instanceof Queue.Task
+                ? Tasks.getAuthenticationOf2((Queue.Task) run.getParent()).getName()
+                : ACL.SYSTEM2.getName();
+        return run.getParent().getFullName() + '\u0000' + authentication;
+    }
+
+    private static boolean isParameter(String credentialsId, Run<?, ?> run) {
+        ParametersAction parameters = run.getAction(ParametersAction.class);
+        if (parameters == null) {
+            return false;
+        }
+        for (ParameterValue value : parameters.getAllParameters()) {
+            if (value instanceof CredentialsParameterValue && credentialsId.equals(((CredentialsParameterValue) value).getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static StringCredentials lookup(String credentialsId, Run<?, ?> run) {
+        if (run == null) {
+            return lookupRoot(credentialsId);
+        }
+        // looks up from the job up to the root, with the authentication of the job
+        StringCredentials credentials = CredentialsProvider.findCredentialById(credentialsId, StringCredentials.class, run);
+        if (credentials != null) {
+            return credentials;
+        }
+        credentials = lookupRoot(credentialsId);
+        if (credentials != null) {
+            LOGGER.log(Level.WARNING, "{0} can''t see the credentials {1}, e.g. they are System scoped, using the ones of the root store: "
+                    + "make them Global", new Object[] {run.getParent().getFullName(), credentialsId});
+            CredentialsProvider.track(run, credentials);
+        }
+        return credentials;
+    }
+
+    private static StringCredentials lookupRoot(String credentialsId) {
+        return CredentialsMatchers.firstOrNull(
+                CredentialsProvider.lookupCredentials(StringCredentials.class, Jenkins.get(), ACL.SYSTEM, Collections.emptyList()),
+                CredentialsMatchers.withId(credentialsId));
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    // nothing resolved before the credentials stores are loaded is valid
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void invalidateOnStartup() {
+        get().invalidate();
+    }
+
+    @Extension
+    public static class StoreListener extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof SystemCredentialsProvider || o instanceof ItemGroup || o instanceof User) {
+                get().invalidate();
+            }
+        }
+    }
+
+    @Extension
+    public static class JobListener extends ItemListener {
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            get().invalidate();
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            get().invalidate();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.Util;
+import io.jenkins.plugins.googlechecks.models.GoogleChecksCheck;
+import io.jenkins.plugins.googlechecks.models.GoogleChecksPolicy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ Gating policy compiled from a GoogleChecksPolicy.
+
+ Each check type maps to a row indexed by severity, giving the budget the failing check counts against (or NOT_GATED).
+ Evaluating a report is then a single pass with one map lookup per failing check, whatever the number of rules.
+ Compiled policies are cached by their JSON, so a policy shared by many jobs is only compiled once.
+ */
+public final class GatingPolicy {
+    private static final JsonFactory JSON_FACTORY = new GsonFactory();
+    private static final int MAX_CACHED_POLICIES = 100;
+    private static final Map<String, GatingPolicy> COMPILED = new ConcurrentHashMap<>();
+
+    private static final SeverityThreshold[] SEVERITIES = SeverityThreshold.values();
+    private static final int NOT_GATED = -1;
+
+    private final Map<String, int[]> rowsByType = new HashMap<>();
+    private final int[] defaultRow;
+    private final int[] budgets;
+    private final String[] budgetNames;
+
+    private GatingPolicy(GoogleChecksPolicy policy) {
+        List<Integer> budgetList = new ArrayList<>();
+        List<String> nameList = new ArrayList<>();
+
+        defaultRow = compileRow(parseThreshold(policy.severityThreshold), budgetList.size());
+        budgetList.add(policy.maxFailures == null ? 0 : policy.maxFailures);
+        nameList.add("default");
+
+        if (policy.rules != null) {
+            for (GoogleChecksPolicy.Rule rule : policy.rules) {
+                if (rule.type == null) {
+                    throw new IllegalArgumentException("Every policy rule must have a type");
+                }
+                rowsByType.put(rule.type, compileRow(parseThreshold(rule.severityThreshold), budgetList.size()));
+                budgetList.add(rule.maxFailures == null ? 0 : rule.maxFailures);
+                nameList.add(rule.type);
+            }
+        }
+        if (policy.allowlist != null) {
+            int[] allowed = new int[SEVERITIES.length];
+            Arrays.fill(allowed, NOT_GATED);
+            for (String type : policy.allowlist) {
+                rowsByType.put(type, allowed);
+            }
+        }
+
+        budgets = budgetList.stream().mapToInt(Integer::intValue).toArray();
+        budgetNames = nameList.toArray(new String[0]);
+    }
+
+    private static SeverityThreshold parseThreshold(String threshold) {
+        return threshold == null ? SeverityThreshold.PRIORITY : SeverityThreshold.valueOf(threshold);
+    }
+
+    private static int[] compileRow(SeverityThreshold threshold, int budget) {
+        int[] row = new int[SEVERITIES.length];
+        for (SeverityThreshold severity : SEVERITIES) {
+            row[severity.ordinal()] = threshold.includes(severity.name()) ? budget : NOT_GATED;
+        }
+        return row;
+    }
+
+    public static GatingPolicy compile(String json) throws IOException {
+        GatingPolicy policy = COMPILED.get(json);
+        if (policy == null) {
+            policy = new GatingPolicy(JSON_FACTORY.fromString(json, GoogleChecksPolicy.class));
+            if (COMPILED.size() >= MAX_CACHED_POLICIES) {
+                COMPILED.clear();
+            }
+            COMPILED.put(json, policy);
+        }
+        return policy;
+    }
+
+    /*
+     Returns the policy given inline, or else the content of the policy file, or null when there is no policy.
+     The policy file is a path relative to the workspace, and must stay inside it: the step runs on the controller,
+     it mustn't give pipeline authors a way to read the files of the controller.
+     */
+    public static String load(String policy, String policyFile, FilePath workspace) throws IOException, InterruptedException {
+        if (policy != null && !policy.isBlank()) {
+            return policy;
+        }
+        if (policyFile == null || policyFile.isBlank()) {
+            return null;
+        }
+        if (workspace == null) {
+            throw new AbortException("policyFile is read from the workspace, the step must run inside a node block");
+        }
+        if (Util.isAbsolute(policyFile) || !workspace.isDescendant(policyFile)) {
+            throw new AbortException("policyFile must be a path inside the workspace: " + policyFile);
+        }
+        try (InputStream in = workspace.child(policyFile).read()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    public Result evaluate(List<GoogleChecksCheck> checks) {
+        int[] counts = new int[budgets.length];
+        List<String> failingChecks = new ArrayList<>();
+        if (checks != null) {
+            for (GoogleChecksCheck check : checks) {
+                if (!"FAILED".equals(check.state) || check.severity == null) {
+                    continue;
+                }
+                int severity = severityIndex(check.severity);
+                if (severity < 0) {
+                    continue;
+                }
+                int budget = rowsByType.getOrDefault(check.type, defaultRow)[severity];
+                if (budget != NOT_GATED) {
+                    counts[budget]++;
+                    failingChecks.add(String.format("Type: %s. Details. %s", check.type, check));
+                }
+            }
+        }
+
+        List<String> violations = new ArrayList<>();
+        for (int i = 0; i < budgets.length; i++) {
+            if (counts[i] > budgets[i]) {
+                violations.add(String.format("%s: %d failing check(s), %d allowed", budgetNames[i], counts[i], budgets[i]));
+            }
+        }
+        return new Result(failingChecks, violations);
+    }
+
+    private static int severityIndex(String severity) {
+        for (SeverityThreshold value : SEVERITIES) {
+            if (value.name().equals(severity)) {
+                return value.ordinal();
+            }
+        }
+        return -1;
+    }
+
+    public static class Result {
+        private final List<String> failingChecks;
+        private final List<String> violations;
+
+        Result(List<String> failingChecks, List<String> violations) {
+            this.failingChecks = failingChecks;
+            this.violations = violations;
+        }
+
+        public List<String> getFailingChecks() {
+            return failingChecks;
+        }
+
+        public List<String> getViolations() {
+            return violations;
+        }
+
+        public boolean isValid() {
+            return violations.isEmpty();
+        }
+    }
+}
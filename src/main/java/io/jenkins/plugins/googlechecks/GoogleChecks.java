@@ -15,127 +15,243 @@
 package io.jenkins.plugins.googlechecks;
 
 import com.google.api.client.http.*;
-import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.GenericJson;
 import com.google.api.client.json.JsonFactory;
-import com.google.api.client.json.JsonObjectParser;
 import com.google.api.client.json.gson.GsonFactory;
 import com.google.auth.oauth2.AccessToken;
 import com.google.auth.oauth2.GoogleCredentials;
+import hudson.model.Node;
+import hudson.model.Run;
+import jenkins.util.VirtualFile;
 import io.jenkins.plugins.googlechecks.models.GoogleChecksCheck;
 import io.jenkins.plugins.googlechecks.models.GoogleChecksOperation;
 import io.jenkins.plugins.googlechecks.models.GoogleChecksReport;
 import io.jenkins.plugins.googlechecks.models.GoogleChecksUpload;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 public class GoogleChecks {
     private String baseUrl = "https://checks.googleapis.com";
-    private static final HttpTransport HTTP_TRANSPORT = new NetHttpTransport();
     private static final JsonFactory JSON_FACTORY = new GsonFactory();
 
     private String projectId;
     private String accountId;
     private String appId;
     private String accessTokenValue;
+    private final ChecksHttpEngine engine;
+    private long lastUploadBytes;
+    private long lastUploadMillis;
+    private String lastUploadSha256;
+    private boolean lastUploadFromSharedStorage;
+    // full name of the job the calls are counted for in ChecksUsage
+    private String job;
 
     public GoogleChecks(String baseUrl, String projectId, String accountId, String appId) {
-        if (baseUrl != null) {
-            this.baseUrl = baseUrl;
-        }
+        List<String> endpoints = RoutingHttpEngine.parseEndpoints(baseUrl != null ? baseUrl : this.baseUrl);
+        // the URLs are built for the first endpoint, the routing engine sends them to the best one
+        this.baseUrl = endpoints.get(0);
         this.projectId = projectId;
         this.accountId = accountId;
         this.appId = appId;
+        ChecksHttpEngine configured = GoogleChecksConfiguration.get().getHttpEngine().get();
+        this.engine = endpoints.size() > 1 ? new RoutingHttpEngine(configured, endpoints) : configured;
     }
 
     public void authenticate(String credentialsId) throws IOException {
+        authenticate(credentialsId, null);
+    }
+
+    public void authenticate(String credentialsId, Run<?, ?> run) throws IOException {
         GoogleCredentialsHelper googleCredentialsHelper = GoogleCredentialsHelperFactory.getInstance().getOrCreateGoogleCredentialsHelper();
-        this.accessTokenValue = googleCredentialsHelper.authenticate(credentialsId);
-    }
-
-    private HttpRequest createRequest(String requestMethod, String url) throws IOException {
-        HttpRequestFactory requestFactory =
-                HTTP_TRANSPORT.createRequestFactory(
-                        new HttpRequestInitializer() {
-                            @Override
-                            public void initialize(HttpRequest request) {
-                                request.setParser(new JsonObjectParser(JSON_FACTORY));
-                            }
-                        });
-        HttpRequest request = requestFactory.buildRequest(requestMethod, new GenericUrl(url), null);
-        request.getHeaders().set("X-Goog-User-Project", this.projectId);
-        request.getHeaders().set("Authorization", String.format("Bearer %s", accessTokenValue));
-        return request;
-    }
-
-    private String executeAndParseAsString(HttpRequest request) throws IOException {
-        HttpResponse response = request.execute();
-        try {
-            return response.parseAsString();
-        } finally {
-            response.disconnect();
+        this.accessTokenValue = googleCredentialsHelper.authenticate(credentialsId, run);
+        if (run != null) {
+            this.job = run.getParent().getFullName();
         }
     }
 
-    private <T> T executeAndParse(HttpRequest request, Class<T> destinationClass) throws IOException {
-        HttpResponse response = request.execute();
-        if (!response.isSuccessStatusCode()) {
-            handleNotOKStatusCode(response.getStatusCode());
+    /*
+     Uses the access token of a withGoogleChecks session instead of authenticating on its own.
+     */
+    public void authenticate(ChecksSession.Client client, Run<?, ?> run) throws IOException {
+        this.accessTokenValue = client.getAccessToken(run);
+        if (run != null) {
+            this.job = run.getParent().getFullName();
         }
-        try {
-            return response.parseAs(destinationClass);
-        } finally {
-            response.disconnect();
+    }
+
+    private ChecksHttpEngine.Request createRequest(String requestMethod, String url) {
+        return new ChecksHttpEngine.Request(requestMethod, url)
+                .header("X-Goog-User-Project", this.projectId)
+                .header("Authorization", String.format("Bearer %s", accessTokenValue));
+    }
+
+    private String executeAndParseAsString(ChecksHttpEngine.Request request) throws IOException {
+        return checkStatus(engine.send(request)).getBody();
+    }
+
+    private <T> T executeAndParse(ChecksHttpEngine.Request request, Class<T> destinationClass) throws IOException {
+        return parse(engine.send(request), destinationClass);
+    }
+
+    private <T> CompletableFuture<T> executeAndParseAsync(ChecksHttpEngine.Request request, Class<T> destinationClass) {
+        return engine.sendAsync(request).thenApply(response -> {
+            try {
+                return parse(response, destinationClass);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    private static <T> T parse(ChecksHttpEngine.Response response, Class<T> destinationClass) throws IOException {
+        return JSON_FACTORY.fromString(checkStatus(response).getBody(), destinationClass);
+    }
+
+    // same error as google-http-client throws when executing a request
+    private static ChecksHttpEngine.Response checkStatus(ChecksHttpEngine.Response response) throws HttpResponseException {
+        if (!response.isSuccessStatusCode()) {
+            HttpResponseException.Builder builder = new HttpResponseException.Builder(response.getStatusCode(), response.getStatusMessage(), new HttpHeaders())
+                    .setContent(response.getBody());
+            StringBuilder message = new StringBuilder().append(response.getStatusCode());
+            if (response.getStatusMessage() != null) {
+                message.append(' ').append(response.getStatusMessage());
+            }
+            if (response.getBody() != null && !response.getBody().isEmpty()) {
+                message.append('\n').append(response.getBody());
+            }
+            throw builder.setMessage(message.toString()).build();
         }
+        return response;
     }
 
-    private void handleNotOKStatusCode(int statusCode) {
-        switch (statusCode) {
-            case 400:
-                throw new IllegalArgumentException("Bad Request");
-            case 403:
-                throw new IllegalArgumentException("Forbidden");
-            default:
-                throw new RuntimeException("API Error returned with status code=" + statusCode);
+    /*
+     Opens a connection to the API without credentials, so that DNS, TCP and TLS are done before the first build needs them.
+     */
+    public static void warmUp(String baseUrl) throws IOException {
+        // the response doesn't matter, the connection stays open for the next requests
+        for (String endpoint : RoutingHttpEngine.parseEndpoints(baseUrl != null ? baseUrl : "https://checks.googleapis.com")) {
+            GoogleChecksConfiguration.get().getHttpEngine().get().send(new ChecksHttpEngine.Request("GET", endpoint));
         }
     }
 
     public String getAppsList() throws IOException {
         String url = buildUrl("/v1alpha/accounts/%s/apps/", this.accountId);
-        HttpRequest request = createRequest("GET", url);
+        ChecksHttpEngine.Request request = createRequest("GET", url);
         // TODO use GoogleChecksAppList model
         // something like Type type = new TypeToken<ArrayList<AppListResponse>>() {}.getType();
         return executeAndParseAsString(request);
     }
 
     public GoogleChecksUpload uploadBinary(String binaryPath) throws IOException {
+        return uploadBinary(binaryPath, new BandwidthLimiter[0]);
+    }
+
+    public GoogleChecksUpload uploadBinary(String binaryPath, BandwidthLimiter... limiters) throws IOException {
+        return upload(UploadPipeline.forFile(Path.of(binaryPath), limiters));
+    }
+
+    /*
+     Uploads an archived artifact straight from the artifact manager, without copying it to a workspace first.
+     */
+    public GoogleChecksUpload uploadArtifact(VirtualFile artifact, BandwidthLimiter... limiters) throws IOException {
+        return upload(UploadPipeline.forStream(artifact.open(), artifact.length(), limiters));
+    }
+
+    private GoogleChecksUpload upload(UploadPipeline source) throws IOException {
         String url = buildUrl("/upload/v1alpha/accounts/%s/apps/%s/reports:analyzeUpload", this.accountId, this.appId);
-        HttpRequest request = createRequest("POST", url);
+        ChecksHttpEngine.Request request = createRequest("POST", url);
+
+        // the binary is read once and streamed, it is hashed on the way for the logs
+        UploadPipeline.DigestStage sha256 = UploadPipeline.DigestStage.sha256();
+        long start = System.nanoTime();
+        try (UploadPipeline pipeline = source.addStage(sha256)) {
+            request.body(new ChecksHttpEngine.Body("application/octet-stream", pipeline.getLength(), pipeline::openStream));
+            request.header("X-Goog-Upload-Protocol", "raw");
+            GoogleChecksUpload upload = executeAndParse(request, GoogleChecksUpload.class);
+            lastUploadBytes = pipeline.getBytesSent();
+            lastUploadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            lastUploadSha256 = sha256.getHexDigest();
+            ChecksUsage.get().recordUpload(job, projectId, appId, lastUploadBytes, lastUploadSha256);
+            return upload;
+        }
+    }
+
+    /*
+     Uploads from another node, e.g. an agent with a better link to Google. See RemoteUploader.
+     */
+    public GoogleChecksUpload uploadFrom(Node node, RemoteUploader.Source source) throws IOException {
+        String url = buildUrl("/upload/v1alpha/accounts/%s/apps/%s/reports:analyzeUpload", this.accountId, this.appId);
+        ChecksHttpEngine.Request request = createRequest("POST", url).header("X-Goog-Upload-Protocol", "raw");
+        if (engine instanceof RoutingHttpEngine) {
+            request = ((RoutingHttpEngine) engine).route(request);
+        }
+        RemoteUploader.Result result = RemoteUploader.upload(node, request, GoogleChecksConfiguration.get().getHttpEngine(), source);
+        GoogleChecksUpload upload = parse(result.getResponse(), GoogleChecksUpload.class);
+        lastUploadBytes = result.getBytesSent();
+        lastUploadMillis = result.getMillis();
+        lastUploadSha256 = result.getSha256();
+        lastUploadFromSharedStorage = result.isSharedStorage();
+        ChecksUsage.get().recordUpload(job, projectId, appId, lastUploadBytes, lastUploadSha256);
+        return upload;
+    }
 
-        // TODO check if binaryPath exists
-        byte[] binaryData = Files.readAllBytes(Path.of(binaryPath));
-        System.out.printf("binaryPath=%s, len=%s\n", Path.of(binaryPath), binaryData.length);
-        request.setContent(new ByteArrayContent("application/octet-stream", binaryData));
-        request.getHeaders().set("X-Goog-Upload-Protocol", "raw");
-        return executeAndParse(request, GoogleChecksUpload.class);
+    public long getLastUploadBytes() {
+        return lastUploadBytes;
+    }
+
+    public long getLastUploadMillis() {
+        return lastUploadMillis;
+    }
+
+    public String getLastUploadSha256() {
+        return lastUploadSha256;
+    }
+
+    // whether the node of uploadFrom read the binary itself instead of getting it from the controller
+    public boolean isLastUploadFromSharedStorage() {
+        return lastUploadFromSharedStorage;
     }
 
     public GoogleChecksOperation checkOperation(String operationId) throws IOException {
         String url = buildUrl("/v1alpha/accounts/%s/apps/%s/operations/%s", this.accountId, this.appId, operationId);
-        HttpRequest request = createRequest("GET", url);
-        return executeAndParse(request, GoogleChecksOperation.class);
+        ChecksUsage.get().recordPoll(job, projectId);
+        return executeAndParse(createRequest("GET", url), GoogleChecksOperation.class);
+    }
+
+    /*
+     Same as checkOperation, without holding a thread while waiting for the response with the HTTP/2 engine.
+     */
+    public CompletableFuture<GoogleChecksOperation> checkOperationAsync(String operationId) {
+        String url = buildUrl("/v1alpha/accounts/%s/apps/%s/operations/%s", this.accountId, this.appId, operationId);
+        ChecksUsage.get().recordPoll(job, projectId);
+        return executeAndParseAsync(createRequest("GET", url), GoogleChecksOperation.class);
+    }
+
+    /*
+     Asks the server to stop the analysis. The operation then ends as done with an error.
+     */
+    public void cancelOperation(String operationId) throws IOException {
+        String url = buildUrl("/v1alpha/accounts/%s/apps/%s/operations/%s:cancel", this.accountId, this.appId, operationId);
+        byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+        ChecksHttpEngine.Request request = createRequest("POST", url)
+                .body(new ChecksHttpEngine.Body("application/json", body.length, () -> new ByteArrayInputStream(body)));
+        executeAndParse(request, GenericJson.class);
     }
 
     public GoogleChecksReport getReport(String reportId) throws IOException {
         String url = buildUrl("/v1alpha/accounts/%s/apps/%s/reports/%s?fields=name,checks(type,state,severity)", this.accountId, this.appId, reportId);
-        HttpRequest request = createRequest("GET", url);
-        return executeAndParse(request, GoogleChecksReport.class);
+        ChecksUsage.get().recordReportFetch(job, projectId);
+        return executeAndParse(createRequest("GET", url), GoogleChecksReport.class);
     }
 
     public static List<String> validateReport(List<GoogleChecksCheck> checks, SeverityThreshold severityThreshold) {
@@ -0,0 +1,211 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import com.cloudbees.plugins.credentials.CredentialsMatchers;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.Util;
+import hudson.model.Node;
+import hudson.security.ACL;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+import jenkins.model.GlobalConfiguration;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+import org.jenkinsci.Symbol;
+import org.jenkinsci.plugins.plaincredentials.StringCredentials;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ Controller-wide settings of the plugin, under "Google Checks" in Manage Jenkins > System.
+ */
+@Extension
+@Symbol("googleChecks")
+public class GoogleChecksConfiguration extends GlobalConfiguration {
+    private long uploadBytesPerSecond;
+    private int maxConcurrentUploads;
+    private List<UploadPriorityRule> priorityRules = new ArrayList<>();
+    private String defaultCredentialsId;
+    private boolean prewarm;
+    private HttpEngine httpEngine;
+    private String uploadNodesLabel;
+
+    public GoogleChecksConfiguration() {
+        load();
+    }
+
+    public static GoogleChecksConfiguration get() {
+        return ExtensionList.lookupSingleton(GoogleChecksConfiguration.class);
+    }
+
+    @Override
+    public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
+        // an empty list isn't submitted, it wouldn't replace the current rules
+        priorityRules = new ArrayList<>();
+        req.bindJSON(this, json);
+        return true;
+    }
+
+    public long getUploadBytesPerSecond() {
+        return uploadBytesPerSecond;
+    }
+
+    @DataBoundSetter
+    public void setUploadBytesPerSecond(long uploadBytesPerSecond) {
+        this.uploadBytesPerSecond = Math.max(0, uploadBytesPerSecond);
+        save();
+    }
+
+    public int getMaxConcurrentUploads() {
+        return maxConcurrentUploads;
+    }
+
+    @DataBoundSetter
+    public void setMaxConcurrentUploads(int maxConcurrentUploads) {
+        this.maxConcurrentUploads = Math.max(0, maxConcurrentUploads);
+        save();
+    }
+
+    public List<UploadPriorityRule> getPriorityRules() {
+        return priorityRules == null ? Collections.emptyList() : Collections.unmodifiableList(priorityRules);
+    }
+
+    @DataBoundSetter
+    public void setPriorityRules(List<UploadPriorityRule> priorityRules) {
+        this.priorityRules = priorityRules == null ? new ArrayList<>() : new ArrayList<>(priorityRules);
+        save();
+    }
+
+    public String getDefaultCredentialsId() {
+        return defaultCredentialsId;
+    }
+
+    @DataBoundSetter
+    public void setDefaultCredentialsId(String defaultCredentialsId) {
+        this.defaultCredentialsId = Util.fixEmptyAndTrim(defaultCredentialsId);
+        save();
+    }
+
+    public boolean isPrewarm() {
+        return prewarm;
+    }
+
+    @DataBoundSetter
+    public void setPrewarm(boolean prewarm) {
+        this.prewarm = prewarm;
+        save();
+    }
+
+    /*
+     Label expression of the nodes the steps may upload from with uploadLabel. The access token is sent to that node, so
+     it is up to the administrators, not to the pipelines, to decide which agents are trusted with it.
+     */
+    public String getUploadNodesLabel() {
+        return uploadNodesLabel;
+    }
+
+    @DataBoundSetter
+    public void setUploadNodesLabel(String uploadNodesLabel) {
+        this.uploadNodesLabel = Util.fixEmptyAndTrim(uploadNodesLabel);
+        save();
+    }
+
+    public HttpEngine getHttpEngine() {
+        return httpEngine == null ? HttpEngine.NET_HTTP_TRANSPORT : httpEngine;
+    }
+
+    @DataBoundSetter
+    public void setHttpEngine(HttpEngine httpEngine) {
+        this.httpEngine = httpEngine;
+        save();
+    }
+
+    public ListBoxModel doFillHttpEngineItems() {
+        ListBoxModel items = new ListBoxModel();
+        for (HttpEngine engine : HttpEngine.values()) {
+            items.add(engine.getDisplayName(), engine.name());
+        }
+        return items;
+    }
+
+    public ListBoxModel doFillDefaultCredentialsIdItems(@QueryParameter String defaultCredentialsId) {
+        if (!Jenkins.get().hasPermission(Jenkins.ADMINISTER)) {
+            return new StandardListBoxModel().includeCurrentValue(defaultCredentialsId);
+        }
+        // only the credentials the jobs can use: System scoped ones are only for the controller itself
+        return new StandardListBoxModel()
+                .includeEmptyValue()
+                .includeMatchingAs(ACL.SYSTEM2, Jenkins.get(), StringCredentials.class, Collections.emptyList(),
+                        CredentialsMatchers.withScope(CredentialsScope.GLOBAL))
+                .includeCurrentValue(defaultCredentialsId);
+    }
+
+    public FormValidation doCheckDefaultCredentialsId(@QueryParameter String value) {
+        if (Util.fixEmptyAndTrim(value) == null || !Jenkins.get().hasPermission(Jenkins.ADMINISTER)) {
+            return FormValidation.ok();
+        }
+        StringCredentials credentials = CredentialsMatchers.firstOrNull(
+                CredentialsProvider.lookupCredentials(StringCredentials.class, Jenkins.get(), ACL.SYSTEM, Collections.emptyList()),
+                CredentialsMatchers.withId(value));
+        if (credentials == null) {
+            return FormValidation.error("No secret text credentials with this id in the root store");
+        }
+        if (credentials.getScope() != CredentialsScope.GLOBAL) {
+            return FormValidation.warning("These credentials aren't Global: the jobs can't use them");
+        }
+        return FormValidation.ok();
+    }
+
+    /*
+     Priority of the uploads of a job, given by the first matching rule.
+     */
+    public UploadPriority getUploadPriority(String jobFullName) {
+        for (UploadPriorityRule rule : getPriorityRules()) {
+            if (rule.matches(jobFullName)) {
+                return rule.getPriority();
+            }
+        }
+        return UploadPriority.NORMAL;
+    }
+
+    /*
+     Limiters applying to an upload sent from the given node: the controller-wide one and the one of the node, if any.
+     */
+    public BandwidthLimiter[] getUploadLimiters(Node node) {
+        List<BandwidthLimiter> limiters = new ArrayList<>();
+        if (uploadBytesPerSecond > 0) {
+            limiters.add(BandwidthLimiter.get("global", uploadBytesPerSecond));
+        }
+        if (node != null) {
+            UploadBandwidthNodeProperty property = node.getNodeProperties().get(UploadBandwidthNodeProperty.class);
+            if (property != null && property.getBytesPerSecond() > 0) {
+                // the built-in node has an empty name
+                String name = node == Jenkins.get() ? "(built-in)" : node.getNodeName();
+                limiters.add(BandwidthLimiter.get("node:" + name, property.getBytesPerSecond()));
+            }
+        }
+        return limiters.toArray(new BandwidthLimiter[0]);
+    }
+}
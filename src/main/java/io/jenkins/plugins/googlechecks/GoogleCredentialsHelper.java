@@ -14,46 +14,92 @@
 
 package io.jenkins.plugins.googlechecks;
 
-import com.cloudbees.plugins.credentials.CredentialsMatcher;
-import com.cloudbees.plugins.credentials.CredentialsMatchers;
-import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.google.auth.oauth2.AccessToken;
 import com.google.auth.oauth2.GoogleCredentials;
-import hudson.security.ACL;
-import jenkins.model.Jenkins;
+import hudson.model.Run;
 import org.jenkinsci.plugins.plaincredentials.StringCredentials;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Collections;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /*
  Class to be able to mock Google Credentials mechanism when testing
 */
 public class GoogleCredentialsHelper {
+    private static final int MAX_CACHED_CREDENTIALS = 100;
+
+    // parsed service accounts by SHA-256 of their content: they keep their access token until it expires,
+    // and a rotated key is a new entry
+    private final Map<String, GoogleCredentials> credentialsCache = new ConcurrentHashMap<>();
+
     public StringCredentials lookupCredentials(String credentialId) {
-        List<StringCredentials> credentials = CredentialsProvider.lookupCredentials(StringCredentials.class, Jenkins.get(), ACL.SYSTEM, Collections.emptyList());
-        CredentialsMatcher matcher = CredentialsMatchers.withId(credentialId);
-        return CredentialsMatchers.firstOrNull(credentials, matcher);
+        return lookupCredentials(credentialId, null);
+    }
+
+    /*
+     Looks up the credentials visible from the run (including folder-scoped ones), or from the root when run is null.
+     */
+    public StringCredentials lookupCredentials(String credentialId, Run<?, ?> run) {
+        if (credentialId == null) {
+            return null;
+        }
+        return CredentialsResolutionCache.get().resolve(credentialId, run);
     }
 
     public String getSecret(String credentialsId) {
+        return getSecret(credentialsId, null);
+    }
+
+    public String getSecret(String credentialsId, Run<?, ?> run) {
         try {
-            return lookupCredentials(credentialsId).getSecret().getPlainText();
+            return lookupCredentials(credentialsId, run).getSecret().getPlainText();
         } catch (NullPointerException exception) {
             throw new IllegalArgumentException("You must provide initialized credentials id (content of your serviceaccount.json)");
         }
     }
 
     public String authenticate(String credentialsId) throws IOException {
-        String serviceAccountContent = getSecret(credentialsId);
-        InputStream serviceAccountStream = new ByteArrayInputStream(serviceAccountContent.getBytes());
-        GoogleCredentials credentials = GoogleCredentials.fromStream(serviceAccountStream)
-                .createScoped("https://www.googleapis.com/auth/checks");
+        return authenticate(credentialsId, null);
+    }
+
+    public String authenticate(String credentialsId, Run<?, ?> run) throws IOException {
+        String serviceAccountContent = getSecret(credentialsId, run);
+        String key = sha256(serviceAccountContent);
+        GoogleCredentials credentials = credentialsCache.get(key);
+        if (credentials == null) {
+            InputStream serviceAccountStream = new ByteArrayInputStream(serviceAccountContent.getBytes());
+            credentials = GoogleCredentials.fromStream(serviceAccountStream)
+                    .createScoped("https://www.googleapis.com/auth/checks");
+            if (credentialsCache.size() >= MAX_CACHED_CREDENTIALS) {
+                credentialsCache.clear();
+            }
+            GoogleCredentials existing = credentialsCache.putIfAbsent(key, credentials);
+            if (existing != null) {
+                credentials = existing;
+            }
+        }
+        // only calls the token endpoint when there is no token yet or it is about to expire
         credentials.refreshIfExpired();
         AccessToken accessToken = credentials.getAccessToken();
         return accessToken.getTokenValue();
     }
+
+    private static String sha256(String content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
@@ -0,0 +1,48 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+/*
+ HTTP engines available in the global configuration. Each one is created once and shared by all the builds.
+ */
+public enum HttpEngine {
+    NET_HTTP_TRANSPORT("google-http-client (HTTP/1.1)"),
+    JAVA_HTTP_CLIENT("Java HTTP client (HTTP/2)");
+
+    private final String displayName;
+    private volatile ChecksHttpEngine engine;
+
+    HttpEngine(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public ChecksHttpEngine get() {
+        ChecksHttpEngine result = engine;
+        if (result == null) {
+            synchronized (this) {
+                result = engine;
+                if (result == null) {
+                    result = this == JAVA_HTTP_CLIENT ? new JavaHttpClientEngine() : new NetHttpEngine();
+                    engine = result;
+                }
+            }
+        }
+        return result;
+    }
+}
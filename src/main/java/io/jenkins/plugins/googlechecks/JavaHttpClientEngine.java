@@ -0,0 +1,98 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/*
+ java.net.http.HttpClient, negotiating HTTP/2 with the API: the concurrent polls of all the builds are multiplexed
+ over a few connections, and no thread waits for the responses.
+
+ Redirects are followed here rather than by the client, which would send the Authorization header to wherever the
+ redirect points: as google-http-client does, the header is dropped, and requests with a body aren't redirected
+ since it can only be read once.
+ */
+public class JavaHttpClientEngine implements ChecksHttpEngine {
+    // same as the defaults of google-http-client
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(20);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+    private static final int MAX_REDIRECTS = 10;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(CONNECT_TIMEOUT)
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .build();
+
+    @Override
+    public CompletableFuture<Response> sendAsync(Request request) {
+        return sendAsync(request, 0);
+    }
+
+    private CompletableFuture<Response> sendAsync(Request request, int redirects) {
+        return client.sendAsync(toHttpRequest(request), HttpResponse.BodyHandlers.ofString()).thenCompose(response -> {
+            Request redirect = redirects < MAX_REDIRECTS ? redirectOf(request, response) : null;
+            if (redirect != null) {
+                return sendAsync(redirect, redirects + 1);
+            }
+            return CompletableFuture.completedFuture(new Response(response.statusCode(), null, response.body()));
+        });
+    }
+
+    private static Request redirectOf(Request request, HttpResponse<?> response) {
+        int status = response.statusCode();
+        if (status != 301 && status != 302 && status != 303 && status != 307 && status != 308 || request.getBody() != null) {
+            return null;
+        }
+        String location = response.headers().firstValue("Location").orElse(null);
+        if (location == null) {
+            return null;
+        }
+        Request redirect = new Request(status == 303 ? "GET" : request.getMethod(), response.uri().resolve(location).toString());
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            if (!"Authorization".equalsIgnoreCase(header.getKey())) {
+                redirect.header(header.getKey(), header.getValue());
+            }
+        }
+        return redirect;
+    }
+
+    private static HttpRequest toHttpRequest(Request request) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(request.getUrl()));
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        Body body = request.getBody();
+        if (body == null) {
+            builder.method(request.getMethod(), HttpRequest.BodyPublishers.noBody());
+            builder.timeout(REQUEST_TIMEOUT);
+        } else {
+            // the stream is read as the connection accepts data, uploads have no overall timeout
+            HttpRequest.BodyPublisher publisher = HttpRequest.BodyPublishers.ofInputStream(body::open);
+            if (body.getLength() >= 0) {
+                publisher = HttpRequest.BodyPublishers.fromPublisher(publisher, body.getLength());
+            }
+            builder.header("Content-Type", body.getContentType());
+            builder.method(request.getMethod(), publisher);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,68 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.InputStreamContent;
+import com.google.api.client.http.javanet.NetHttpTransport;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/*
+ google-http-client over HttpURLConnection: HTTP/1.1 only, each request holds a ChecksExecutors thread until
+ its response is read.
+ */
+public class NetHttpEngine implements ChecksHttpEngine {
+    private final HttpTransport transport = new NetHttpTransport();
+
+    @Override
+    public CompletableFuture<Response> sendAsync(Request request) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return send(request);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, ChecksExecutors.get());
+    }
+
+    @Override
+    public Response send(Request request) throws IOException {
+        HttpRequest httpRequest = transport.createRequestFactory().buildRequest(request.getMethod(), new GenericUrl(request.getUrl()), null);
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            httpRequest.getHeaders().set(header.getKey(), header.getValue());
+        }
+        Body body = request.getBody();
+        if (body != null) {
+            httpRequest.setContent(new InputStreamContent(body.getContentType(), body.open())
+                    .setLength(body.getLength())
+                    .setRetrySupported(false));
+        }
+        // the status code is checked by the caller, as with the other engine
+        httpRequest.setThrowExceptionOnExecuteError(false);
+        HttpResponse response = httpRequest.execute();
+        try {
+            return new Response(response.getStatusCode(), response.getStatusMessage(), response.parseAsString());
+        } finally {
+            response.disconnect();
+        }
+    }
+}
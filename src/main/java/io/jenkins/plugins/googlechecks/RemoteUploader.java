@@ -0,0 +1,294 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import hudson.AbortException;
+import hudson.model.Computer;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.remoting.RemoteInputStream;
+import hudson.remoting.VirtualChannel;
+import jenkins.model.Jenkins;
+import jenkins.security.MasterToSlaveCallable;
+import jenkins.util.VirtualFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ Sends uploads from a node picked by label (uploadLabel), e.g. the agents with a fast link to Google, instead of the
+ controller. The request, including the access token, is sent to the node: only the nodes matching the uploadNodesLabel
+ of the global configuration are eligible, agents are less trusted than the controller.
+
+ The binary is read from the same path on the agent when it sees the same file (shared storage, same size and
+ modification time), otherwise it is streamed from the controller over the agent channel. Only the bandwidth limit of
+ that node applies, the controller-wide limit is about the egress of the controller.
+ */
+public final class RemoteUploader {
+    // uploads running on each node, to spread them between equally good nodes
+    private static final Map<String, AtomicInteger> RUNNING = new ConcurrentHashMap<>();
+
+    private RemoteUploader() {
+    }
+
+    /*
+     Online node matching the label expression and allowed to upload, with the best upload bandwidth: no limit first,
+     then the highest limit, then the one running the fewest uploads.
+     */
+    public static Node selectNode(String labelExpression) throws AbortException {
+        String allowedExpression = GoogleChecksConfiguration.get().getUploadNodesLabel();
+        if (allowedExpression == null) {
+            throw new AbortException("uploadLabel can't be used: no node is allowed to upload, see 'Nodes allowed to upload' "
+                    + "in the Google Checks configuration");
+        }
+        Label label;
+        Label allowed;
+        try {
+            label = Label.parseExpression(labelExpression);
+        } catch (IllegalArgumentException e) {
+            throw new AbortException(String.format("Invalid uploadLabel '%s': %s", labelExpression, e.getMessage()));
+        }
+        try {
+            allowed = Label.parseExpression(allowedExpression);
+        } catch (IllegalArgumentException e) {
+            throw new AbortException(String.format("Invalid 'Nodes allowed to upload' '%s': %s", allowedExpression, e.getMessage()));
+        }
+        Node best = null;
+        for (Node node : label.getNodes()) {
+            if (!allowed.contains(node)) {
+                continue;
+            }
+            Computer computer = node.toComputer();
+            if (computer == null || computer.isOffline() || computer.getChannel() == null) {
+                continue;
+            }
+            if (best == null || compare(node, best) < 0) {
+                best = node;
+            }
+        }
+        if (best == null) {
+            throw new AbortException(String.format("No online node allowed to upload (%s) matches uploadLabel '%s'", allowedExpression, labelExpression));
+        }
+        return best;
+    }
+
+    private static int compare(Node a, Node b) {
+        long rateA = effectiveRate(a);
+        long rateB = effectiveRate(b);
+        if (rateA != rateB) {
+            return Long.compare(rateB, rateA);
+        }
+        return Integer.compare(running(a).get(), running(b).get());
+    }
+
+    // Long.MAX_VALUE when the node isn't limited
+    private static long effectiveRate(Node node) {
+        long rate = getBytesPerSecond(node);
+        return rate > 0 ? rate : Long.MAX_VALUE;
+    }
+
+    static long getBytesPerSecond(Node node) {
+        UploadBandwidthNodeProperty property = node.getNodeProperties().get(UploadBandwidthNodeProperty.class);
+        return property == null ? 0 : property.getBytesPerSecond();
+    }
+
+    private static AtomicInteger running(Node node) {
+        return RUNNING.computeIfAbsent(getName(node), k -> new AtomicInteger());
+    }
+
+    static String getName(Node node) {
+        // the built-in node has an empty name
+        return node == Jenkins.get() ? "(built-in)" : node.getNodeName();
+    }
+
+    /*
+     Binary to upload, as seen from the controller.
+     */
+    public static final class Source {
+        private final String path;
+        private final long length;
+        private final long lastModified;
+        private final VirtualFile artifact;
+
+        private Source(String path, long length, long lastModified, VirtualFile artifact) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.artifact = artifact;
+        }
+
+        public static Source forFile(Path path) throws IOException {
+            return new Source(path.toAbsolutePath().toString(), Files.size(path), Files.getLastModifiedTime(path).toMillis(), null);
+        }
+
+        public static Source forArtifact(VirtualFile artifact) throws IOException {
+            return new Source(null, artifact.length(), 0, artifact);
+        }
+
+        InputStream open() throws IOException {
+            return artifact != null ? artifact.open() : Files.newInputStream(Path.of(path));
+        }
+    }
+
+    /*
+     Sends the request with the body read from the source, from the given node. The response is returned as is,
+     the caller checks its status.
+     */
+    public static Result upload(Node node, ChecksHttpEngine.Request request, HttpEngine engine, Source source) throws IOException {
+        VirtualChannel channel = node.getChannel();
+        if (channel == null) {
+            throw new IOException(getName(node) + " is offline");
+        }
+        AtomicInteger running = running(node);
+        running.incrementAndGet();
+        try {
+            boolean shared = source.path != null && channel.call(new IsSameFile(source.path, source.length, source.lastModified));
+            // greedy: the controller pushes the bytes ahead of the reads of the agent, within the window of the channel
+            try (InputStream in = shared ? null : source.open()) {
+                UploadCallable callable = new UploadCallable(request.getMethod(), request.getUrl(), new LinkedHashMap<>(request.getHeaders()),
+                        engine, shared ? source.path : null, source.length,
+                        shared ? null : new RemoteInputStream(in, RemoteInputStream.Flag.GREEDY),
+                        "node:" + getName(node), getBytesPerSecond(node));
+                return channel.call(callable);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while uploading from " + getName(node));
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    public static final class Result implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode;
+        private final String statusMessage;
+        private final String body;
+        private final long bytesSent;
+        private final long millis;
+        private final String sha256;
+        private final boolean sharedStorage;
+
+        Result(int statusCode, String statusMessage, String body, long bytesSent, long millis, String sha256, boolean sharedStorage) {
+            this.statusCode = statusCode;
+            this.statusMessage = statusMessage;
+            this.body = body;
+            this.bytesSent = bytesSent;
+            this.millis = millis;
+            this.sha256 = sha256;
+            this.sharedStorage = sharedStorage;
+        }
+
+        public ChecksHttpEngine.Response getResponse() {
+            return new ChecksHttpEngine.Response(statusCode, statusMessage, body);
+        }
+
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+
+        public boolean isSharedStorage() {
+            return sharedStorage;
+        }
+    }
+
+    private static final class UploadCallable extends MasterToSlaveCallable<Result, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private final String method;
+        private final String url;
+        private final LinkedHashMap<String, String> headers;
+        private final HttpEngine engine;
+        // set when the agent reads the file itself, the stream is set otherwise
+        private final String path;
+        private final long length;
+        private final InputStream stream;
+        private final String limiterKey;
+        private final long bytesPerSecond;
+
+        UploadCallable(String method, String url, LinkedHashMap<String, String> headers, HttpEngine engine, String path,
+                       long length, InputStream stream, String limiterKey, long bytesPerSecond) {
+            this.method = method;
+            this.url = url;
+            this.headers = headers;
+            this.engine = engine;
+            this.path = path;
+            this.length = length;
+            this.stream = stream;
+            this.limiterKey = limiterKey;
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        @Override
+        public Result call() throws IOException {
+            // runs on the agent: no Jenkins singleton here, only what was sent along
+            BandwidthLimiter limiter = BandwidthLimiter.get(limiterKey, bytesPerSecond);
+            UploadPipeline source = path != null
+                    ? UploadPipeline.forFile(Path.of(path), limiter)
+                    : UploadPipeline.forStream(stream, length, limiter);
+            UploadPipeline.DigestStage sha256 = UploadPipeline.DigestStage.sha256();
+            long start = System.nanoTime();
+            try (UploadPipeline pipeline = source.addStage(sha256)) {
+                ChecksHttpEngine.Request request = new ChecksHttpEngine.Request(method, url)
+                        .body(new ChecksHttpEngine.Body("application/octet-stream", pipeline.getLength(), pipeline::openStream));
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    request.header(header.getKey(), header.getValue());
+                }
+                ChecksHttpEngine.Response response = engine.get().send(request);
+                return new Result(response.getStatusCode(), response.getStatusMessage(), response.getBody(), pipeline.getBytesSent(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), sha256.getHexDigest(), path != null);
+            }
+        }
+    }
+
+    // whether the agent sees the file of the controller at the same path, e.g. on a shared volume
+    private static final class IsSameFile extends MasterToSlaveCallable<Boolean, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private final String path;
+        private final long length;
+        private final long lastModified;
+
+        IsSameFile(String path, long length, long lastModified) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public Boolean call() throws IOException {
+            Path file = Path.of(path);
+            return Files.isRegularFile(file) && Files.size(file) == length && Files.getLastModifiedTime(file).toMillis() == lastModified;
+        }
+    }
+}
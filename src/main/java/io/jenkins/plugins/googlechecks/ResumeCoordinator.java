@@ -0,0 +1,131 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import hudson.model.Run;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ After a restart, every waiting step resumes at about the same time. Instead of all polling right away, the
+ resumptions of the next few seconds are gathered, the access tokens they need are fetched once, then their first
+ polls are spread over a window, the closest deadlines first, with some jitter.
+ The window grows with the number of steps (SPACING_MILLIS each) up to WINDOW_MILLIS.
+ */
+public final class ResumeCoordinator {
+    private static final Logger LOGGER = Logger.getLogger(ResumeCoordinator.class.getName());
+    private static final ResumeCoordinator INSTANCE = new ResumeCoordinator();
+
+    static final long WINDOW_MILLIS = TimeUnit.SECONDS.toMillis(SystemProperties.getLong(ResumeCoordinator.class.getName() + ".windowSeconds", 60L));
+    static final long SPACING_MILLIS = SystemProperties.getLong(ResumeCoordinator.class.getName() + ".spacingMillis", 100L);
+    private static final long GATHER_MILLIS = 2000;
+
+    private List<Resumption> pending = new ArrayList<>();
+
+    private ResumeCoordinator() {
+    }
+
+    public static ResumeCoordinator get() {
+        return INSTANCE;
+    }
+
+    /*
+     start is called on ChecksExecutors with the delay of the first poll, in milliseconds.
+     */
+    public synchronized void register(long deadline, String credentialsId, Run<?, ?> run, LongConsumer start) {
+        if (pending.isEmpty()) {
+            Timer.get().schedule(this::flush, GATHER_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        pending.add(new Resumption(deadline, credentialsId, run, start));
+    }
+
+    private void flush() {
+        List<Resumption> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+        ChecksExecutors.get().submit(() -> {
+            warmTokens(batch);
+            long[] delays = schedule(batch, System.currentTimeMillis(), ThreadLocalRandom.current());
+            LOGGER.log(Level.FINE, "Resuming {0} Checks waits over {1} ms", new Object[] {batch.size(), delays.length == 0 ? 0 : delays[delays.length - 1]});
+            for (int i = 0; i < batch.size(); i++) {
+                Resumption resumption = batch.get(i);
+                long delay = delays[i];
+                ChecksExecutors.get().submit(() -> resumption.start.accept(delay));
+            }
+        });
+    }
+
+    // one token request per credentials (and job, for folder credentials) instead of one per step
+    private static void warmTokens(List<Resumption> batch) {
+        GoogleCredentialsHelper helper = GoogleCredentialsHelperFactory.getInstance().getOrCreateGoogleCredentialsHelper();
+        Set<String> warmed = new HashSet<>();
+        for (Resumption resumption : batch) {
+            String key = (resumption.run == null ? "" : resumption.run.getParent().getFullName()) + '\u0000' + resumption.credentialsId;
+            if (resumption.credentialsId == null || !warmed.add(key)) {
+                continue;
+            }
+            try {
+                helper.authenticate(resumption.credentialsId, resumption.run);
+            } catch (Exception e) {
+                // the step will fail on its own authentication
+                LOGGER.log(Level.FINE, "Failed to warm the token of " + resumption.credentialsId, e);
+            }
+        }
+    }
+
+    /*
+     Sorts the batch by deadline and returns the delay of the first poll of each resumption, in the same order.
+     */
+    static long[] schedule(List<Resumption> batch, long now, Random random) {
+        batch.sort(Comparator.comparingLong(r -> r.deadline));
+        long window = Math.min(WINDOW_MILLIS, batch.size() * SPACING_MILLIS);
+        long slot = batch.isEmpty() ? 0 : window / batch.size();
+        long[] delays = new long[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            long delay = i * slot + (slot > 0 ? (long) (random.nextDouble() * slot) : 0);
+            // still poll before the deadline
+            delays[i] = Math.max(0, Math.min(delay, batch.get(i).deadline - now));
+        }
+        return delays;
+    }
+
+    static final class Resumption {
+        final long deadline;
+        final String credentialsId;
+        final Run<?, ?> run;
+        final LongConsumer start;
+
+        Resumption(long deadline, String credentialsId, Run<?, ?> run, LongConsumer start) {
+            this.deadline = deadline;
+            this.credentialsId = credentialsId;
+            this.run = run;
+            this.start = start;
+        }
+    }
+}
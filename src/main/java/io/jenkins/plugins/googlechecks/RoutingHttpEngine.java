@@ -0,0 +1,330 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ Spreads the requests of GoogleChecks over several endpoints serving the same API, e.g. regional endpoints or egress
+ proxies, given as a comma separated baseUrl.
+
+ The health of each endpoint (moving averages of its latency and error rate, recent latencies) is shared by all the
+ builds of the controller. Each request goes to the fastest endpoint among those that aren't failing, an endpoint failing
+ more than a few requests in a row is only tried again once the others fail too, or after a while. GETs are hedged: when the response takes longer
+ than the p95 latency of that endpoint, the same request is sent to the next best endpoint and the first response wins.
+ A request failing with an I/O error or a 5xx response is sent to the next endpoint right away.
+ Other requests (uploads, cancellations) are sent once, to the healthiest endpoint.
+ send() doesn't hedge: the attempts run one after the other on the calling thread, through the send() of the engine.
+ Callers already run on ChecksExecutors, and an engine such as NetHttpEngine runs sendAsync there too: waiting on it from
+ a bounded pool would deadlock once every thread of the pool is waiting.
+ */
+public class RoutingHttpEngine implements ChecksHttpEngine {
+    private static final Logger LOGGER = Logger.getLogger(RoutingHttpEngine.class.getName());
+
+    static final boolean HEDGING = SystemProperties.getBoolean(RoutingHttpEngine.class.getName() + ".hedging", true);
+    // until an endpoint has enough samples for a p95
+    static final long DEFAULT_HEDGE_DELAY_MILLIS = SystemProperties.getLong(RoutingHttpEngine.class.getName() + ".defaultHedgeDelayMillis", 500L);
+    private static final long MIN_HEDGE_DELAY_MILLIS = 10;
+    private static final long MAX_HEDGE_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    // the primary and one hedge or failover: more would multiply the load when the API itself is slow
+    private static final int MAX_ATTEMPTS = 2;
+    private static final Map<String, Health> HEALTH = new ConcurrentHashMap<>();
+
+    private final ChecksHttpEngine delegate;
+    private final List<String> endpoints;
+
+    public RoutingHttpEngine(ChecksHttpEngine delegate, List<String> endpoints) {
+        this.delegate = delegate;
+        this.endpoints = Collections.unmodifiableList(new ArrayList<>(endpoints));
+    }
+
+    /*
+     Endpoints of a baseUrl, e.g. "https://checks.googleapis.com, https://checks-proxy.example.com".
+     */
+    public static List<String> parseEndpoints(String baseUrl) {
+        List<String> endpoints = new ArrayList<>();
+        for (String endpoint : baseUrl.split("[,\\s]+")) {
+            if (!endpoint.isEmpty()) {
+                endpoints.add(endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint);
+            }
+        }
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("baseUrl has no endpoint: " + baseUrl);
+        }
+        return endpoints;
+    }
+
+    static Health health(String endpoint) {
+        return HEALTH.computeIfAbsent(endpoint, k -> new Health());
+    }
+
+    /*
+     Endpoints from the healthiest to the least healthy: the ones that aren't failing by latency, then the failing ones by
+     error rate. Endpoints without samples come first, in the configured order, so that every endpoint gets measured.
+     */
+    List<String> rank() {
+        // snapshots: the health of an endpoint may change while sorting
+        Map<String, Double> failing = new HashMap<>();
+        Map<String, Double> latencies = new HashMap<>();
+        long now = System.currentTimeMillis();
+        for (String endpoint : endpoints) {
+            Health health = health(endpoint);
+            failing.put(endpoint, health.isFailing(now) ? health.getErrorRate() : 0);
+            latencies.put(endpoint, health.getLatencyMillis());
+        }
+        List<String> ranked = new ArrayList<>(endpoints);
+        ranked.sort(Comparator.comparingDouble((String endpoint) -> failing.get(endpoint)).thenComparingDouble(latencies::get));
+        return ranked;
+    }
+
+    /*
+     The request sent to the healthiest endpoint instead of the one it was built for.
+     */
+    public Request route(Request request) {
+        return withEndpoint(request, rank().get(0));
+    }
+
+    @Override
+    public Response send(Request request) throws IOException {
+        if (endpointOf(request) == null) {
+            return delegate.send(request);
+        }
+        List<String> ranked = rank();
+        boolean idempotent = "GET".equals(request.getMethod()) && request.getBody() == null;
+        int attempts = idempotent ? Math.min(MAX_ATTEMPTS, ranked.size()) : 1;
+        Response response = null;
+        IOException error = null;
+        for (int i = 0; i < attempts; i++) {
+            String endpoint = ranked.get(i);
+            if (i > 0) {
+                LOGGER.log(Level.FINE, "Sending {0} to {1} too", new Object[] {request.getUrl(), endpoint});
+            }
+            Health health = health(endpoint);
+            long start = System.nanoTime();
+            try {
+                response = delegate.send(withEndpoint(request, endpoint));
+                error = null;
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                health.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), true);
+                response = null;
+                error = e;
+                continue;
+            }
+            boolean serverError = isServerError(response);
+            health.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), serverError);
+            if (!serverError) {
+                return response;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        return response;
+    }
+
+    @Override
+    public CompletableFuture<Response> sendAsync(Request request) {
+        if (endpointOf(request) == null) {
+            return delegate.sendAsync(request);
+        }
+        List<String> ranked = rank();
+        boolean idempotent = "GET".equals(request.getMethod()) && request.getBody() == null;
+        if (!idempotent || ranked.size() == 1) {
+            return attempt(ranked.get(0), request);
+        }
+        Hedge hedge = new Hedge(request, ranked);
+        hedge.launchNext();
+        if (HEDGING) {
+            ScheduledFuture<?> timer = Timer.get().schedule(hedge::launchNext, health(ranked.get(0)).getHedgeDelayMillis(), TimeUnit.MILLISECONDS);
+            hedge.result.whenComplete((response, error) -> timer.cancel(false));
+        }
+        return hedge.result;
+    }
+
+    private CompletableFuture<Response> attempt(String endpoint, Request request) {
+        Health health = health(endpoint);
+        long start = System.nanoTime();
+        CompletableFuture<Response> attempt;
+        try {
+            attempt = delegate.sendAsync(withEndpoint(request, endpoint));
+        } catch (RuntimeException e) {
+            attempt = CompletableFuture.failedFuture(e);
+        }
+        return attempt.whenComplete((response, error) ->
+                health.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), error != null || isServerError(response)));
+    }
+
+    private String endpointOf(Request request) {
+        for (String endpoint : endpoints) {
+            if (request.getUrl().startsWith(endpoint + "/")) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    private Request withEndpoint(Request request, String endpoint) {
+        String origin = endpointOf(request);
+        if (origin == null || origin.equals(endpoint)) {
+            return request;
+        }
+        Request routed = new Request(request.getMethod(), endpoint + request.getUrl().substring(origin.length()));
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            routed.header(header.getKey(), header.getValue());
+        }
+        return routed.body(request.getBody());
+    }
+
+    private static boolean isServerError(Response response) {
+        return response != null && response.getStatusCode() >= 500;
+    }
+
+    /*
+     Attempts of one request: the first usable response wins, the last failure is returned if they all fail.
+     */
+    private final class Hedge {
+        private final Request request;
+        private final List<String> ranked;
+        private final CompletableFuture<Response> result = new CompletableFuture<>();
+        private int launched;
+        private int failed;
+        private Response lastResponse;
+        private Throwable lastError;
+
+        Hedge(Request request, List<String> ranked) {
+            this.request = request;
+            this.ranked = ranked;
+        }
+
+        boolean launchNext() {
+            int index;
+            synchronized (this) {
+                if (result.isDone() || launched >= Math.min(MAX_ATTEMPTS, ranked.size())) {
+                    return false;
+                }
+                index = launched++;
+            }
+            String endpoint = ranked.get(index);
+            if (index > 0) {
+                LOGGER.log(Level.FINE, "Sending {0} to {1} too", new Object[] {request.getUrl(), endpoint});
+            }
+            // outside of the lock: the engine may send the request before returning
+            attempt(endpoint, request).whenComplete(this::onAttempt);
+            return true;
+        }
+
+        private void onAttempt(Response response, Throwable error) {
+            if (error == null && !isServerError(response)) {
+                result.complete(response);
+                return;
+            }
+            synchronized (this) {
+                failed++;
+                lastResponse = response;
+                lastError = error;
+            }
+            // fail over right away instead of waiting for the hedge delay
+            if (launchNext()) {
+                return;
+            }
+            synchronized (this) {
+                if (failed < launched) {
+                    // another attempt is still running
+                    return;
+                }
+            }
+            if (lastError != null) {
+                result.completeExceptionally(lastError);
+            } else {
+                result.complete(lastResponse);
+            }
+        }
+    }
+
+    /*
+     Health of an endpoint, as seen from this controller.
+     */
+    static final class Health {
+        private static final double ALPHA = 0.2;
+        // one error in a row is tolerated (0.2), two aren't (0.36)
+        private static final double MAX_ERROR_RATE = 0.3;
+        // a failing endpoint gets a request again after this long, to notice when it recovers
+        private static final long RETRY_FAILING_MILLIS = TimeUnit.SECONDS.toMillis(30);
+        private static final int WINDOW = 128;
+        private static final int MIN_SAMPLES = 10;
+
+        private final long[] latencies = new long[WINDOW];
+        private int samples;
+        private int successes;
+        private double latencyMillis;
+        private double errorRate;
+        private long lastErrorAt;
+
+        synchronized void record(long millis, boolean error) {
+            errorRate = samples == 0 ? (error ? 1 : 0) : errorRate + ALPHA * ((error ? 1 : 0) - errorRate);
+            samples++;
+            // failures don't count in the latencies: a fast error isn't a fast response
+            if (error) {
+                lastErrorAt = System.currentTimeMillis();
+                return;
+            }
+            latencyMillis = successes == 0 ? millis : latencyMillis + ALPHA * (millis - latencyMillis);
+            latencies[successes % WINDOW] = millis;
+            successes++;
+        }
+
+        synchronized boolean isFailing(long now) {
+            return errorRate > MAX_ERROR_RATE && now - lastErrorAt < RETRY_FAILING_MILLIS;
+        }
+
+        synchronized double getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        synchronized double getErrorRate() {
+            return errorRate;
+        }
+
+        synchronized long getHedgeDelayMillis() {
+            int n = Math.min(successes, WINDOW);
+            if (n < MIN_SAMPLES) {
+                return DEFAULT_HEDGE_DELAY_MILLIS;
+            }
+            long[] sorted = Arrays.copyOf(latencies, n);
+            Arrays.sort(sorted);
+            long p95 = sorted[(int) Math.ceil(n * 0.95) - 1];
+            return Math.max(MIN_HEDGE_DELAY_MILLIS, Math.min(MAX_HEDGE_DELAY_MILLIS, p95));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/*
+ Input stream of an upload, paced by every given limiter (e.g. the global one and the one of the node).
+ */
+public class ThrottledInputStream extends FilterInputStream {
+    // small reads keep the rate smooth instead of sending bursts of a whole buffer
+    private static final int MAX_CHUNK = 16 * 1024;
+
+    private final BandwidthLimiter[] limiters;
+    private long bytesRead;
+
+    public ThrottledInputStream(InputStream in, BandwidthLimiter... limiters) {
+        super(in);
+        this.limiters = limiters;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            throttle(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, Math.min(len, MAX_CHUNK));
+        if (n > 0) {
+            throttle(n);
+        }
+        return n;
+    }
+
+    private void throttle(int n) throws IOException {
+        bytesRead += n;
+        for (BandwidthLimiter limiter : limiters) {
+            limiter.acquire(n);
+        }
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+}
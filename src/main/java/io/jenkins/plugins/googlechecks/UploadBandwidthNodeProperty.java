@@ -0,0 +1,50 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import hudson.Extension;
+import hudson.model.Node;
+import hudson.slaves.NodeProperty;
+import hudson.slaves.NodePropertyDescriptor;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/*
+ Limits the bandwidth used by the uploads to Google Checks sent from a node, on top of the controller-wide limit.
+ */
+public class UploadBandwidthNodeProperty extends NodeProperty<Node> {
+    private final long bytesPerSecond;
+
+    @DataBoundConstructor
+    public UploadBandwidthNodeProperty(long bytesPerSecond) {
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    @Extension
+    @Symbol("googleChecksUploadBandwidth")
+    public static class DescriptorImpl extends NodePropertyDescriptor {
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return "Google Checks upload bandwidth limit";
+        }
+    }
+}
@@ -0,0 +1,325 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/*
+ Reads a binary exactly once and streams it to the network.
+
+ A reader fills direct buffers from the source channel on ChecksExecutors.readers() while the previous buffer is being
+ processed by the stages (e.g. hashing) and sent, with two buffers in flight: disk and network I/O overlap and the
+ throughput gets close to the slower of both. Buffers are recycled through a small pool shared by all uploads, once
+ neither the reader nor the consumer of the stream can touch them anymore: the stream may still be read by another
+ thread (e.g. the HttpClient sending the body) after the pipeline is closed, its reads then fail.
+ */
+public class UploadPipeline implements Closeable {
+    static final int BUFFER_SIZE = 1024 * 1024;
+    private static final int BUFFERS_PER_UPLOAD = 2;
+    static final BlockingQueue<ByteBuffer> BUFFER_POOL = new LinkedBlockingQueue<>(8 * BUFFERS_PER_UPLOAD);
+    private static final ByteBuffer END_OF_STREAM = ByteBuffer.allocate(0);
+
+    /*
+     Step applied to every buffer between the disk and the network, in order.
+     A stage can return the buffer as is (e.g. hashing) or a transformed one.
+     */
+    public interface Stage {
+        ByteBuffer apply(ByteBuffer buffer) throws IOException;
+
+        default boolean preservesLength() {
+            return true;
+        }
+    }
+
+    private final ReadableByteChannel source;
+    private final long length;
+    private final BandwidthLimiter[] limiters;
+    private final List<Stage> stages = new ArrayList<>();
+    private final List<ByteBuffer> buffers = new ArrayList<>();
+    private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(BUFFERS_PER_UPLOAD);
+    private final BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<>(BUFFERS_PER_UPLOAD + 1);
+    // the reader and the consumer, the buffers go back to the pool when both are done with them
+    private int users = 2;
+    private volatile boolean closed;
+    private volatile IOException readFailure;
+    private volatile Future<?> reader;
+    private Thread readerThread;
+    private long bytesSent;
+
+    public UploadPipeline(ReadableByteChannel source, long length, BandwidthLimiter... limiters) {
+        this.source = source;
+        this.length = length;
+        this.limiters = limiters;
+        for (int i = 0; i < BUFFERS_PER_UPLOAD; i++) {
+            ByteBuffer buffer = BUFFER_POOL.poll();
+            if (buffer == null) {
+                buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            }
+            buffers.add(buffer);
+            free.add(buffer);
+        }
+    }
+
+    public static UploadPipeline forFile(Path path, BandwidthLimiter... limiters) throws IOException {
+        long length = Files.size(path);
+        return new UploadPipeline(FileChannel.open(path, StandardOpenOption.READ), length, limiters);
+    }
+
+    /*
+     Pipeline reading from a stream, e.g. an archived artifact that may live in an external storage.
+     The stream is closed with the pipeline.
+     */
+    public static UploadPipeline forStream(InputStream in, long length, BandwidthLimiter... limiters) {
+        return new UploadPipeline(Channels.newChannel(in), length, limiters);
+    }
+
+    public UploadPipeline addStage(Stage stage) {
+        stages.add(stage);
+        return this;
+    }
+
+    public long getLength() {
+        for (Stage stage : stages) {
+            if (!stage.preservesLength()) {
+                return -1;
+            }
+        }
+        return length;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /*
+     Stream of the processed bytes, paced by the bandwidth limiters. It can only be opened once since the source is
+     read once.
+     */
+    public synchronized InputStream openStream() {
+        if (closed) {
+            throw new IllegalStateException("The upload pipeline is closed");
+        }
+        if (reader != null) {
+            throw new IllegalStateException("The upload pipeline can only be consumed once");
+        }
+        reader = ChecksExecutors.readers().submit(this::read);
+        return new ThrottledInputStream(new PipelineInputStream(), limiters) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    bytesSent += n;
+                }
+                return n;
+            }
+        };
+    }
+
+    private void read() {
+        synchronized (this) {
+            readerThread = Thread.currentThread();
+        }
+        try {
+            int n = closed ? -1 : 0;
+            while (n >= 0) {
+                ByteBuffer buffer = free.take();
+                buffer.clear();
+                while (buffer.hasRemaining() && (n = source.read(buffer)) >= 0) {
+                    // fill the whole buffer, reads from a file channel may be partial
+                }
+                buffer.flip();
+                if (buffer.hasRemaining()) {
+                    filled.put(buffer);
+                } else {
+                    free.put(buffer);
+                }
+            }
+        } catch (IOException e) {
+            readFailure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // there is always room for it, at most BUFFERS_PER_UPLOAD buffers are in the queue
+            synchronized (this) {
+                // not to interrupt the next task of the thread
+                readerThread = null;
+                Thread.interrupted();
+            }
+            filled.offer(END_OF_STREAM);
+            release();
+        }
+    }
+
+    private synchronized void release() {
+        if (--users == 0) {
+            for (ByteBuffer buffer : buffers) {
+                BUFFER_POOL.offer(buffer);
+            }
+        }
+    }
+
+    private class PipelineInputStream extends InputStream {
+        private ByteBuffer current;
+        private ByteBuffer currentSource;
+        private boolean ended;
+        private boolean released;
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed || released && !ended) {
+                throw new IOException("The upload pipeline is closed");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            while (current == null || !current.hasRemaining()) {
+                if (ended) {
+                    releaseBuffers();
+                    return -1;
+                }
+                if (currentSource != null) {
+                    free.offer(currentSource);
+                    currentSource = null;
+                }
+                ByteBuffer next;
+                try {
+                    next = filled.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while reading the binary");
+                }
+                if (closed) {
+                    throw new IOException("The upload pipeline is closed");
+                }
+                if (next == END_OF_STREAM) {
+                    ended = true;
+                    if (readFailure != null) {
+                        throw readFailure;
+                    }
+                    current = null;
+                    continue;
+                }
+                currentSource = next;
+                current = next;
+                for (Stage stage : stages) {
+                    current = stage.apply(current);
+                }
+            }
+            int n = Math.min(len, current.remaining());
+            current.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public void close() {
+            releaseBuffers();
+        }
+
+        private void releaseBuffers() {
+            if (!released) {
+                released = true;
+                current = null;
+                currentSource = null;
+                release();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            // the reader may wait for a free buffer the consumer won't give back; one that hasn't started yet
+            // sees closed and exits right away
+            if (readerThread != null) {
+                readerThread.interrupt();
+            }
+        }
+        try {
+            source.close();
+        } finally {
+            if (reader == null) {
+                // never consumed: there is neither a reader nor a stream to wait for
+                release();
+                release();
+            }
+        }
+    }
+
+    /*
+     Hashes the bytes as they go through the pipeline.
+     */
+    public static class DigestStage implements Stage {
+        private final MessageDigest digest;
+        private String hexDigest;
+
+        public DigestStage(String algorithm) {
+            try {
+                this.digest = MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        public static DigestStage sha256() {
+            return new DigestStage("SHA-256");
+        }
+
+        @Override
+        public ByteBuffer apply(ByteBuffer buffer) {
+            digest.update(buffer.duplicate());
+            return buffer;
+        }
+
+        public String getHexDigest() {
+            if (hexDigest == null) {
+                StringBuilder hex = new StringBuilder();
+                for (byte b : digest.digest()) {
+                    hex.append(String.format("%02x", b));
+                }
+                hexDigest = hex.toString();
+            }
+            return hexDigest;
+        }
+    }
+}
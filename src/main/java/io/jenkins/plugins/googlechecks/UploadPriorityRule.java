@@ -0,0 +1,76 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+// Gives a priority to the uploads of the jobs whose full name matches a regular expression,
+// e.g. "releases/.*" for a folder or ".*/(main|release-.*)" for branches of multibranch projects.
+public class UploadPriorityRule extends AbstractDescribableImpl<UploadPriorityRule> {
+    private final String pattern;
+    private final UploadPriority priority;
+    private transient volatile Pattern compiled;
+
+    @DataBoundConstructor
+    public UploadPriorityRule(String pattern, UploadPriority priority) {
+        this.pattern = pattern;
+        this.priority = priority == null ? UploadPriority.NORMAL : priority;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public UploadPriority getPriority() {
+        return priority;
+    }
+
+    public boolean matches(String jobFullName) {
+        if (compiled == null) {
+            compiled = Pattern.compile(pattern);
+        }
+        return compiled.matcher(jobFullName).matches();
+    }
+
+    @Extension
+    @Symbol("uploadPriority")
+    public static class DescriptorImpl extends Descriptor<UploadPriorityRule> {
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return "Upload priority";
+        }
+
+        public FormValidation doCheckPattern(@QueryParameter String value) {
+            try {
+                Pattern.compile(value);
+                return FormValidation.ok();
+            } catch (PatternSyntaxException e) {
+                return FormValidation.error(e.getDescription());
+            }
+        }
+    }
+}
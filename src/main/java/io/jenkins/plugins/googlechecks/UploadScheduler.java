@@ -0,0 +1,206 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/*
+ Controller-wide queue of the uploads waiting for one of the upload slots.
+
+ Slots go to the HIGH lane first, then NORMAL, then LOW. Within a lane, jobs take turns (round robin), so a job
+ submitting a hundred uploads at once doesn't delay the single upload of another job by a hundred uploads.
+ */
+public final class UploadScheduler {
+    private static final UploadScheduler INSTANCE = new UploadScheduler(() -> GoogleChecksConfiguration.get().getMaxConcurrentUploads());
+
+    private final IntSupplier maxConcurrentUploads;
+    // per lane, the queued tickets of each job, in turn order
+    private final Map<UploadPriority, LinkedHashMap<String, ArrayDeque<Ticket>>> lanes = new EnumMap<>(UploadPriority.class);
+    private int running;
+
+    UploadScheduler(IntSupplier maxConcurrentUploads) {
+        this.maxConcurrentUploads = maxConcurrentUploads;
+        for (UploadPriority priority : UploadPriority.values()) {
+            lanes.put(priority, new LinkedHashMap<>());
+        }
+    }
+
+    public static UploadScheduler get() {
+        return INSTANCE;
+    }
+
+    public Ticket submit(String job, UploadPriority priority) {
+        Ticket ticket = new Ticket(job, priority);
+        synchronized (this) {
+            lanes.get(priority).computeIfAbsent(job, k -> new ArrayDeque<>()).add(ticket);
+        }
+        dispatch();
+        return ticket;
+    }
+
+    private void dispatch() {
+        List<Ticket> granted = new ArrayList<>();
+        synchronized (this) {
+            int max = maxConcurrentUploads.getAsInt();
+            while (max <= 0 || running < max) {
+                Ticket next = pollNext();
+                if (next == null) {
+                    break;
+                }
+                running++;
+                next.granted = true;
+                next.waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - next.submittedAt);
+                granted.add(next);
+            }
+        }
+        // outside of the lock, completing runs the callbacks of the waiting uploads
+        for (Ticket ticket : granted) {
+            ticket.future.complete(ticket);
+        }
+    }
+
+    private Ticket pollNext() {
+        for (LinkedHashMap<String, ArrayDeque<Ticket>> lane : lanes.values()) {
+            Iterator<Map.Entry<String, ArrayDeque<Ticket>>> jobs = lane.entrySet().iterator();
+            if (jobs.hasNext()) {
+                Map.Entry<String, ArrayDeque<Ticket>> job = jobs.next();
+                jobs.remove();
+                Ticket ticket = job.getValue().poll();
+                if (!job.getValue().isEmpty()) {
+                    // the job goes back at the end of the turn order
+                    lane.put(job.getKey(), job.getValue());
+                }
+                return ticket;
+            }
+        }
+        return null;
+    }
+
+    private synchronized void release(Ticket ticket) {
+        if (ticket.granted) {
+            running--;
+        } else {
+            ArrayDeque<Ticket> queued = lanes.get(ticket.priority).get(ticket.job);
+            if (queued != null) {
+                queued.remove(ticket);
+                if (queued.isEmpty()) {
+                    lanes.get(ticket.priority).remove(ticket.job);
+                }
+            }
+        }
+    }
+
+    /*
+     1-based position of a queued ticket, following the turn order of its lane, or 0 once it got a slot.
+     */
+    public synchronized int getPosition(Ticket ticket) {
+        if (ticket.granted) {
+            return 0;
+        }
+        int ahead = 0;
+        for (Map.Entry<UploadPriority, LinkedHashMap<String, ArrayDeque<Ticket>>> lane : lanes.entrySet()) {
+            if (lane.getKey().compareTo(ticket.priority) < 0) {
+                for (ArrayDeque<Ticket> queued : lane.getValue().values()) {
+                    ahead += queued.size();
+                }
+            } else if (lane.getKey() == ticket.priority) {
+                ArrayDeque<Ticket> own = lane.getValue().get(ticket.job);
+                int rank = 0;
+                if (own != null) {
+                    for (Ticket t : own) {
+                        if (t == ticket) {
+                            break;
+                        }
+                        rank++;
+                    }
+                }
+                // the jobs before this one in the turn order get one more turn than the jobs after it
+                boolean beforeOwnJob = true;
+                for (Map.Entry<String, ArrayDeque<Ticket>> job : lane.getValue().entrySet()) {
+                    if (job.getKey().equals(ticket.job)) {
+                        beforeOwnJob = false;
+                        ahead += rank;
+                    } else {
+                        ahead += Math.min(job.getValue().size(), beforeOwnJob ? rank + 1 : rank);
+                    }
+                }
+            }
+        }
+        return ahead + 1;
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    public class Ticket implements AutoCloseable {
+        private final String job;
+        private final UploadPriority priority;
+        private final long submittedAt = System.nanoTime();
+        private final CompletableFuture<Ticket> future = new CompletableFuture<>();
+        private volatile boolean granted;
+        private volatile long waitedMillis = -1;
+        private boolean closed;
+
+        Ticket(String job, UploadPriority priority) {
+            this.job = job;
+            this.priority = priority;
+        }
+
+        public UploadPriority getPriority() {
+            return priority;
+        }
+
+        public boolean isGranted() {
+            return granted;
+        }
+
+        public CompletableFuture<Ticket> whenGranted() {
+            return future;
+        }
+
+        public long getWaitedMillis() {
+            return waitedMillis;
+        }
+
+        public int getPosition() {
+            return UploadScheduler.this.getPosition(this);
+        }
+
+        /*
+         Gives the slot back, or leaves the queue if the upload didn't get one yet.
+         */
+        @Override
+        public void close() {
+            synchronized (UploadScheduler.this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                release(this);
+            }
+            dispatch();
+        }
+    }
+}
@@ -49,6 +49,33 @@ public class UploadToChecksStep extends Step {
     @DataBoundSetter
     private FailOn failOn;
 
+    @DataBoundSetter
+    private String policy;
+
+    @DataBoundSetter
+    private String policyFile;
+
+    @DataBoundSetter
+    private Integer timeoutMinutes;
+
+    @DataBoundSetter
+    private String artifactPath;
+    @DataBoundSetter
+    private String artifactJob;
+    @DataBoundSetter
+    private String artifactBuild;
+
+    @DataBoundSetter
+    private Boolean spoolOnFailure = false;
+    @DataBoundSetter
+    private Boolean unstableOnSpool = false;
+
+    @DataBoundSetter
+    private Boolean publishChecks = false;
+
+    @DataBoundSetter
+    private String uploadLabel;
+
     @DataBoundSetter
     private String baseUrl;
 
@@ -133,6 +160,86 @@ public class UploadToChecksStep extends Step {
         this.failOn = failOn;
     }
 
+    public String getPolicy() {
+        return policy;
+    }
+
+    public void setPolicy(String policy) {
+        this.policy = policy;
+    }
+
+    public String getPolicyFile() {
+        return policyFile;
+    }
+
+    public void setPolicyFile(String policyFile) {
+        this.policyFile = policyFile;
+    }
+
+    public Integer getTimeoutMinutes() {
+        return timeoutMinutes;
+    }
+
+    public void setTimeoutMinutes(Integer timeoutMinutes) {
+        this.timeoutMinutes = timeoutMinutes;
+    }
+
+    public String getArtifactPath() {
+        return artifactPath;
+    }
+
+    public void setArtifactPath(String artifactPath) {
+        this.artifactPath = artifactPath;
+    }
+
+    public String getArtifactJob() {
+        return artifactJob;
+    }
+
+    public void setArtifactJob(String artifactJob) {
+        this.artifactJob = artifactJob;
+    }
+
+    public String getArtifactBuild() {
+        return artifactBuild;
+    }
+
+    public void setArtifactBuild(String artifactBuild) {
+        this.artifactBuild = artifactBuild;
+    }
+
+    public Boolean getSpoolOnFailure() {
+        return spoolOnFailure;
+    }
+
+    public void setSpoolOnFailure(Boolean spoolOnFailure) {
+        this.spoolOnFailure = spoolOnFailure;
+    }
+
+    public Boolean getUnstableOnSpool() {
+        return unstableOnSpool;
+    }
+
+    public void setUnstableOnSpool(Boolean unstableOnSpool) {
+        this.unstableOnSpool = unstableOnSpool;
+    }
+
+    public Boolean getPublishChecks() {
+        return publishChecks;
+    }
+
+    public void setPublishChecks(Boolean publishChecks) {
+        this.publishChecks = publishChecks;
+    }
+
+    public String getUploadLabel() {
+        return uploadLabel;
+    }
+
+    public void setUploadLabel(String uploadLabel) {
+        this.uploadLabel = uploadLabel;
+    }
+
     public String getBaseUrl() {
         return baseUrl;
     }
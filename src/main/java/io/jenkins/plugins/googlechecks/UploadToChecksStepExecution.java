@@ -14,153 +14,214 @@
 
 package io.jenkins.plugins.googlechecks;
 
-import com.cloudbees.plugins.credentials.CredentialsMatcher;
-import com.cloudbees.plugins.credentials.CredentialsMatchers;
-import hudson.model.TaskListener;
-import hudson.security.ACL;
-import io.jenkins.plugins.googlechecks.models.GoogleChecksOperation;
-import io.jenkins.plugins.googlechecks.models.GoogleChecksReport;
+import hudson.model.Node;
+import hudson.model.Result;
+import hudson.model.Run;
+import io.jenkins.plugins.checks.api.ChecksConclusion;
 import io.jenkins.plugins.googlechecks.models.GoogleChecksUpload;
 import jenkins.model.Jenkins;
-import jenkins.util.Timer;
-import org.jenkinsci.plugins.plaincredentials.StringCredentials;
-import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+import jenkins.util.VirtualFile;
 import org.jenkinsci.plugins.workflow.steps.StepContext;
-import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
 import java.io.IOException;
-import java.util.Collections;
-import java.util.List;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
-public class UploadToChecksStepExecution extends AbstractStepExecutionImpl {
-    private static final Logger LOGGER = Logger.getLogger(UploadToChecksStepExecution.class.getName());
+import java.nio.file.Path;
 
+public class UploadToChecksStepExecution extends AbstractChecksReportStepExecution {
     private static final long serialVersionUID = 1L;
-    private static final int TIMEOUT_AFTER = 30 * 60; // in seconds
-    private static final int CHECK_OPERATION_INTERVAL = 10; // seconds
     @Inject
     transient UploadToChecksStep  step;
-    private transient volatile ScheduledFuture<?> task;
-    private long end;
-    private String operationId;
-    private transient GoogleChecks checks;
+    private transient UploadScheduler.Ticket ticket;
 
     protected UploadToChecksStepExecution(UploadToChecksStep step, @Nonnull StepContext context) {
         super(context);
         this.step = step;
-        this.checks = new GoogleChecks(this.step.getBaseUrl(), this.step.getProjectId(), this.step.getAccountId(), this.step.getAppId());
+        // the settings left out default to the ones of the enclosing withGoogleChecks block
+        this.session = sessionOf(context);
+        this.baseUrl = step.getBaseUrl() != null || session == null ? step.getBaseUrl() : session.getBaseUrl();
+        this.projectId = step.getProjectId() != null || session == null ? step.getProjectId() : session.getProjectId();
+        this.accountId = step.getAccountId() != null || session == null ? step.getAccountId() : session.getAccountId();
+        this.appId = step.getAppId();
+        this.credentialsId = step.getCredentialsId() != null ? step.getCredentialsId()
+                : session != null ? session.getCredentialsId() : GoogleChecksConfiguration.get().getDefaultCredentialsId();
+        this.severityThreshold = step.getSeverityThreshold();
+        this.failOn = step.getFailOn();
+        this.timeoutMillis = toTimeoutMillis(step.getTimeoutMinutes());
+        this.checkName = checkNameOf(step.getPublishChecks(), appId);
+        this.checkPath = step.getArtifactPath() != null ? step.getArtifactPath() : step.getBinaryPath();
+        this.checks = createChecks();
     }
 
     @Override public boolean start() throws Exception {
-        checks = new GoogleChecks(this.step.getBaseUrl(), this.step.getProjectId(), this.step.getAccountId(), this.step.getAppId());
-        checks.authenticate(this.step.getCredentialsId());
+        if (!this.step.getGenerateReport()) {
+            submit(() -> {
+                upload();
+                return null;
+            });
+            return false;
+        }
+
+        // wait for an upload slot, without holding any thread
+        Run<?, ?> run = getRun();
+        String job = run == null ? "" : run.getParent().getFullName();
+        ticket = UploadScheduler.get().submit(job, GoogleChecksConfiguration.get().getUploadPriority(job));
+        boolean queued = !ticket.isGranted();
+        if (queued) {
+            getListener().getLogger().printf("Waiting for an upload slot: position %d in the %s priority queue\n", ticket.getPosition(), ticket.getPriority());
+            publishProgress(ChecksStatusPublisher.Stage.QUEUED);
+        }
+        ticket.whenGranted().thenRun(() -> {
+            if (isStopped()) {
+                ticket.close();
+                return;
+            }
+            // authentication and upload are blocking network calls, they must not hold the CPS VM thread
+            submit(() -> {
+                try {
+                    if (queued) {
+                        getListener().getLogger().printf("Got an upload slot after waiting %.1fs\n", ticket.getWaitedMillis() / 1000.0);
+                    }
+                    upload();
+                } finally {
+                    ticket.close();
+                }
+                return null;
+            });
+        });
+        return false;
+    }
+
+    @Override public void stop(@Nonnull Throwable cause) throws Exception {
+        if (ticket != null) {
+            ticket.close();
+        }
+        super.stop(cause);
+    }
+
+    private void upload() throws IOException, InterruptedException {
+        loadPolicy(this.step.getPolicy(), this.step.getPolicyFile());
+        checks = createChecks();
 
         if (this.step.getGenerateReport()) {
-            getListener().getLogger().printf("Uploading %s\n", this.step.getBinaryPath());
+            VirtualFile artifact = resolveArtifact();
+            if (artifact == null) {
+                getListener().getLogger().printf("Uploading %s\n", this.step.getBinaryPath());
+            } else {
+                getListener().getLogger().printf("Uploading artifact %s\n", artifact.toURI());
+            }
 
-            // upload
-            GoogleChecksUpload response = checks.uploadBinary(this.step.getBinaryPath());
+            // upload, paced by the bandwidth limits of the controller, or of the node picked by uploadLabel
+            Node uploadNode = this.step.getUploadLabel() == null ? null : RemoteUploader.selectNode(this.step.getUploadLabel());
+            BandwidthLimiter[] limiters;
+            if (uploadNode == null) {
+                limiters = GoogleChecksConfiguration.get().getUploadLimiters(Jenkins.get());
+            } else {
+                getListener().getLogger().printf("Uploading from %s, matching %s\n", RemoteUploader.getName(uploadNode), this.step.getUploadLabel());
+                long bytesPerSecond = RemoteUploader.getBytesPerSecond(uploadNode);
+                limiters = bytesPerSecond > 0
+                        ? new BandwidthLimiter[] {BandwidthLimiter.get("node:" + RemoteUploader.getName(uploadNode), bytesPerSecond)}
+                        : new BandwidthLimiter[0];
+            }
+            publishProgress(ChecksStatusPublisher.Stage.UPLOADING);
+            GoogleChecksUpload response;
+            try {
+                // the token endpoint being unreachable is spooled too
+                authenticate();
+                if (uploadNode != null) {
+                    RemoteUploader.Source source = artifact == null
+                            ? RemoteUploader.Source.forFile(Path.of(this.step.getBinaryPath()))
+                            : RemoteUploader.Source.forArtifact(artifact);
+                    response = checks.uploadFrom(uploadNode, source);
+                    getListener().getLogger().println(checks.isLastUploadFromSharedStorage()
+                            ? "The binary was read from the shared storage of the node"
+                            : "The binary was streamed to the node");
+                } else {
+                    response = artifact == null
+                            ? checks.uploadBinary(this.step.getBinaryPath(), limiters)
+                            : checks.uploadArtifact(artifact, limiters);
+                }
+            } catch (IOException e) {
+                if (Boolean.TRUE.equals(this.step.getSpoolOnFailure()) && ChecksSpool.isRetryable(e)) {
+                    spool(e, artifact);
+                    return;
+                }
+                throw e;
+            }
             operationId = GoogleChecks.getOperationIdFromName(response.name);
+            logUploadRate(limiters);
 
             long now = System.currentTimeMillis();
-            end = now + TIMEOUT_AFTER * 1000;
+            uploadedAt = now;
+            uploadedBytes = checks.getLastUploadBytes();
+            uploadMillis = checks.getLastUploadMillis();
+            end = now + timeoutMillis;
             if (this.step.getWaitForReport()) {
                 waitReport(now);
-                return false;
             } else {
+                // awaitChecksReport(publishChecks: true) completes the check
+                publishProgress(ChecksStatusPublisher.Stage.ANALYZING);
                 getListener().getLogger().println("Not waiting for the report to be generated. You'll receive an email once the report is ready.");
-                getContext().onSuccess(null);
-                return true;
+                getListener().getLogger().println("Use awaitChecksReport with the value returned by this step to wait for it later in the pipeline.");
+                getContext().onSuccess(new ChecksOperationHandle(baseUrl, projectId, accountId, appId, credentialsId, operationId, now));
             }
         } else {
+            authenticate();
             getListener().getLogger().println("Generating a report is disabled. Testing authentication by get the list of apps");
             getListener().getLogger().println(checks.getAppsList());
             getContext().onSuccess(null);
-            return true;
         }
     }
 
-    private TaskListener getListener() {
-        TaskListener listener;
-        try {
-            listener = getContext().get(TaskListener.class);
-        } catch (Exception x) {
-            LOGGER.log(Level.WARNING, null, x);
-            listener = TaskListener.NULL;
+    private VirtualFile resolveArtifact() throws IOException {
+        if (this.step.getArtifactPath() == null) {
+            if (this.step.getArtifactJob() != null || this.step.getArtifactBuild() != null) {
+                throw new IllegalArgumentException("artifactJob and artifactBuild require artifactPath");
+            }
+            return null;
         }
-
-        return listener;
-    }
-
-    private void waitReport(long now) {
-        if (end > now) {
-            TaskListener listener = getListener();
-            task = Timer.get().scheduleAtFixedRate(new Runnable() {
-                @Override
-                public void run() {
-                    long now = System.currentTimeMillis();
-                    listener.getLogger().printf("Checking on operationId=%s\n", operationId);
-                    try {
-                        GoogleChecksOperation response = checks.checkOperation(operationId);
-                        if (end < now || response.done != null && response.done) {
-                            task.cancel(false);
-                            Boolean isValid = isValidReport(listener, response, step.getSeverityThreshold());
-                            if (step.getFailOn() == FailOn.ALL) {
-                                if (isValid) {
-                                    getContext().onSuccess(null);
-                                } else {
-                                    getContext().onFailure(new RuntimeException("Report has errors"));
-                                }
-                            } else {
-                                getContext().onSuccess(null);
-                            }
-                        }
-                    } catch (IOException e) {
-                        task.cancel(false);
-                        getContext().onFailure(e);
-                        throw new RuntimeException(e);
-                    }
-                }
-            }, 0, CHECK_OPERATION_INTERVAL, TimeUnit.SECONDS);
-        } else {
-            getContext().onSuccess(null);
+        if (this.step.getBinaryPath() != null) {
+            throw new IllegalArgumentException("Set either binaryPath or artifactPath, not both");
         }
+        return ArtifactResolver.resolve(getRun(), this.step.getArtifactJob(), this.step.getArtifactBuild(), this.step.getArtifactPath());
     }
 
-    public Boolean isValidReport(TaskListener listener, GoogleChecksOperation operation) throws IOException {
-        return isValidReport(listener, operation, SeverityThreshold.PRIORITY);
-    }
-
-    public Boolean isValidReport(TaskListener listener, GoogleChecksOperation operation, SeverityThreshold severityThreshold) throws IOException {
-        listener.getLogger().printf("Report console URL: %s\n", operation.response.resultsUri);
-        String reportId = GoogleChecks.getReportIdFromName(operation.response.name);
-        GoogleChecksReport report = checks.getReport(reportId);
-        List<String> failingChecks = GoogleChecks.validateReport(report.checks, severityThreshold);
-        if (!failingChecks.isEmpty()) {
-            listener.getLogger().printf("%s issue(s) detected:\n", failingChecks.size());
-            for (String check : failingChecks) {
-                listener.getLogger().println(check);
+    /*
+     Keeps the binary for ChecksSpoolDrainer and lets the build go on. Fails the step if it can't be spooled.
+     */
+    private void spool(IOException cause, VirtualFile artifact) throws IOException {
+        Run<?, ?> run = getRun();
+        Path binary = artifact == null ? Path.of(this.step.getBinaryPath()) : null;
+        String binaryName = artifact == null ? binary.getFileName().toString() : artifact.getName();
+        ChecksSpool.Entry entry = new ChecksSpool.Entry(baseUrl, projectId, accountId, appId, credentialsId,
+                run == null ? null : run.getExternalizableId(), binaryName, severityThreshold, policy);
+        try {
+            if (artifact == null) {
+                ChecksSpool.get().spool(entry, binary);
+            } else {
+                ChecksSpool.get().spool(entry, artifact.length(), artifact::open);
             }
-        } else {
-            listener.getLogger().println("No issues detected.");
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+            throw cause;
         }
-        return failingChecks.isEmpty();
-    }
-
-    @Override public void stop(@Nonnull Throwable cause) throws Exception {
-        if (task != null) {
-            task.cancel(false);
+        publishFailed(ChecksConclusion.NEUTRAL, "Upload spooled until the Checks API is reachable");
+        getListener().getLogger().printf("Upload failed (%s), spooled as %s. It will be uploaded once the Checks API is reachable, the report will show on this build.\n", cause, entry.getId());
+        if (run != null) {
+            run.addAction(new ChecksSpoolAction(entry.getId(), entry.getBinaryName()));
+            if (Boolean.TRUE.equals(this.step.getUnstableOnSpool())) {
+                run.setResult(Result.UNSTABLE);
+            }
         }
-        super.stop(cause);
+        getContext().onSuccess(null);
     }
 
-    @Override public void onResume() {
-        waitReport(System.currentTimeMillis());
+    private void logUploadRate(BandwidthLimiter[] limiters) {
+        long bytes = checks.getLastUploadBytes();
+        long millis = Math.max(1, checks.getLastUploadMillis());
+        getListener().getLogger().printf("Uploaded %d bytes in %.1fs (%d KB/s), sha256=%s\n", bytes, millis / 1000.0, bytes * 1000 / millis / 1024, checks.getLastUploadSha256());
+        for (BandwidthLimiter limiter : limiters) {
+            getListener().getLogger().printf("Upload bandwidth limited to %d KB/s\n", limiter.getBytesPerSecond() / 1024);
+        }
     }
-}
\ No newline at end of file
+}
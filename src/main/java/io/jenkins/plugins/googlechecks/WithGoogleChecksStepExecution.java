@@ -0,0 +1,79 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+import org.jenkinsci.plugins.workflow.steps.BodyExecutionCallback;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+
+import javax.annotation.Nonnull;
+
+public class WithGoogleChecksStepExecution extends AbstractStepExecutionImpl {
+    private static final long serialVersionUID = 1L;
+
+    private final ChecksSession session;
+
+    protected WithGoogleChecksStepExecution(WithGoogleChecksStep step, @Nonnull StepContext context) {
+        super(context);
+        // a nested block only overrides what it sets
+        ChecksSession outer = AbstractChecksReportStepExecution.sessionOf(context);
+        this.session = new ChecksSession(
+                step.getBaseUrl() != null || outer == null ? step.getBaseUrl() : outer.getBaseUrl(),
+                step.getProjectId() != null || outer == null ? step.getProjectId() : outer.getProjectId(),
+                step.getAccountId() != null || outer == null ? step.getAccountId() : outer.getAccountId(),
+                step.getCredentialsId() != null ? step.getCredentialsId()
+                        : outer != null ? outer.getCredentialsId() : GoogleChecksConfiguration.get().getDefaultCredentialsId());
+    }
+
+    @Override public boolean start() throws Exception {
+        Run<?, ?> run = getContext().get(Run.class);
+        TaskListener listener = getContext().get(TaskListener.class);
+        ChecksExecutors.get().submit(() -> {
+            try {
+                // authenticate up front: bad credentials fail the block before its body runs
+                session.getClient().getAccessToken(run);
+                listener.getLogger().printf("Opened a Google Checks session for projectId=%s accountId=%s\n", session.getProjectId(), session.getAccountId());
+                getContext().newBodyInvoker()
+                        .withContext(session)
+                        .withCallback(new CloseSession(session))
+                        .start();
+            } catch (Exception e) {
+                session.close();
+                getContext().onFailure(e);
+            }
+        });
+        return false;
+    }
+
+    /*
+     Closes the session whichever way the body ends, then completes the block with the outcome of the body.
+     */
+    private static final class CloseSession extends BodyExecutionCallback.TailCall {
+        private static final long serialVersionUID = 1L;
+
+        private final ChecksSession session;
+
+        CloseSession(ChecksSession session) {
+            this.session = session;
+        }
+
+        @Override
+        protected void finished(StepContext context) {
+            session.close();
+        }
+    }
+}
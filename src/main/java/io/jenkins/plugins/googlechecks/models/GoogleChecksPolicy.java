@@ -0,0 +1,53 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks.models;
+
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.util.Key;
+
+import java.util.List;
+
+public final class GoogleChecksPolicy extends GenericJson {
+    /*
+
+    {
+        "severityThreshold": "PRIORITY",
+        "maxFailures": 0,
+        "allowlist": ["DATA_MONITORING_NEW_DATA_TYPE"],
+        "rules": [
+            { "type": "PRIVACY_POLICY_DATA_TYPE_DISCLOSURE", "severityThreshold": "POTENTIAL", "maxFailures": 2 }
+        ]
+    }
+    */
+    // applies to the check types without a rule
+    @Key
+    public String severityThreshold;
+    @Key
+    public Integer maxFailures;
+    // check types that never fail the build
+    @Key
+    public List<String> allowlist;
+    @Key
+    public List<Rule> rules;
+
+    public static class Rule extends GenericJson {
+        @Key
+        public String type;
+        @Key
+        public String severityThreshold;
+        @Key
+        public Integer maxFailures;
+    }
+}
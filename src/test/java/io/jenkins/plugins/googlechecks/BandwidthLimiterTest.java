@@ -0,0 +1,68 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class BandwidthLimiterTest {
+    private static final int RATE = 1024 * 1024; // bytes/second
+
+    @Test
+    public void testConcurrentUploadsShareTheRate() throws Exception {
+        BandwidthLimiter limiter = BandwidthLimiter.get("test-shared", RATE);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            long start = System.nanoTime();
+            // 3 seconds worth of data, the first second is allowed as a burst
+            Future<Long> first = executor.submit(() -> drain(new ThrottledInputStream(newStream(RATE * 3 / 2), limiter)));
+            Future<Long> second = executor.submit(() -> drain(new ThrottledInputStream(newStream(RATE * 3 / 2), limiter)));
+            long bytes = first.get() + second.get();
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            Assert.assertEquals(RATE * 3, bytes);
+            Assert.assertTrue("took " + seconds + "s", seconds >= 1.8);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testUnlimited() throws Exception {
+        BandwidthLimiter limiter = BandwidthLimiter.get("test-unlimited", 0);
+        long start = System.nanoTime();
+        Assert.assertEquals(RATE * 10, drain(new ThrottledInputStream(newStream(RATE * 10), limiter)));
+        Assert.assertTrue((System.nanoTime() - start) / 1e9 < 1);
+    }
+
+    private static InputStream newStream(int length) {
+        return new ByteArrayInputStream(new byte[length]);
+    }
+
+    private static long drain(ThrottledInputStream in) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        while (in.read(buffer) >= 0) {
+            // only count the bytes
+        }
+        return in.getBytesRead();
+    }
+}
@@ -0,0 +1,209 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ Local stand-in for the Checks API, used to load test the plugin.
+ Operations are done after a configurable analysis latency, and requests can randomly fail with 429 or 5xx.
+ Uploads can be throttled to simulate slow links.
+ */
+public class ChecksApiSimulator implements AutoCloseable {
+    private static final Pattern UPLOAD = Pattern.compile("/upload/v1alpha/accounts/([^/]+)/apps/([^/]+)/reports:analyzeUpload");
+    private static final Pattern OPERATION = Pattern.compile("/v1alpha/accounts/([^/]+)/apps/([^/]+)/operations/([^/:]+)");
+    private static final Pattern REPORT = Pattern.compile("/v1alpha/accounts/([^/]+)/apps/([^/]+)/reports/([^/]+)");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicLong nextOperationId = new AtomicLong(1);
+    private final Map<String, Long> operationsDoneAt = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+    private final LongAdder injectedErrors = new LongAdder();
+    private final long startedAt = System.nanoTime();
+
+    private volatile long analysisLatencyMillis = 0;
+    private volatile double tooManyRequestsRate = 0;
+    private volatile double serverErrorRate = 0;
+    private volatile long uploadBytesPerSecond = 0;
+    private volatile String report = "{\"checks\": [{ \"type\": \"DATA_MONITORING\", \"severity\": \"POTENTIAL\", \"state\": \"PASSED\"}]}";
+
+    public ChecksApiSimulator() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    public ChecksApiSimulator withAnalysisLatency(long millis) {
+        this.analysisLatencyMillis = millis;
+        return this;
+    }
+
+    public ChecksApiSimulator withTooManyRequestsRate(double rate) {
+        this.tooManyRequestsRate = rate;
+        return this;
+    }
+
+    public ChecksApiSimulator withServerErrorRate(double rate) {
+        this.serverErrorRate = rate;
+        return this;
+    }
+
+    public ChecksApiSimulator withUploadBytesPerSecond(long bytesPerSecond) {
+        this.uploadBytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    public ChecksApiSimulator withReport(String report) {
+        this.report = report;
+        return this;
+    }
+
+    public long getRequestCount(String kind) {
+        LongAdder count = requestCounts.get(kind);
+        return count == null ? 0 : count.sum();
+    }
+
+    public long getTotalRequestCount() {
+        return requestCounts.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.sum();
+    }
+
+    public double getQps() {
+        double seconds = (System.nanoTime() - startedAt) / 1e9;
+        return getTotalRequestCount() / Math.max(seconds, 0.001);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            Matcher matcher;
+            if ((matcher = UPLOAD.matcher(path)).matches()) {
+                count("upload");
+                drainUpload(exchange.getRequestBody());
+                if (!injectError(exchange)) {
+                    String name = String.format("accounts/%s/apps/%s/operations/%d", matcher.group(1), matcher.group(2), nextOperationId.getAndIncrement());
+                    operationsDoneAt.put(name, System.currentTimeMillis() + analysisLatencyMillis);
+                    respond(exchange, 200, String.format("{\"name\": \"%s\"}", name));
+                }
+            } else if ((matcher = OPERATION.matcher(path)).matches()) {
+                count("operation");
+                if (!injectError(exchange)) {
+                    respondOperation(exchange, matcher);
+                }
+            } else if ((matcher = REPORT.matcher(path)).matches()) {
+                count("report");
+                if (!injectError(exchange)) {
+                    respond(exchange, 200, report);
+                }
+            } else {
+                count("other");
+                respond(exchange, 404, "{}");
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void respondOperation(HttpExchange exchange, Matcher matcher) throws IOException {
+        String name = String.format("accounts/%s/apps/%s/operations/%s", matcher.group(1), matcher.group(2), matcher.group(3));
+        Long doneAt = operationsDoneAt.get(name);
+        if (doneAt == null) {
+            respond(exchange, 404, "{}");
+        } else if (doneAt > System.currentTimeMillis()) {
+            respond(exchange, 200, String.format("{\"name\": \"%s\"}", name));
+        } else {
+            String reportName = String.format("accounts/%s/apps/%s/reports/%s", matcher.group(1), matcher.group(2), matcher.group(3));
+            respond(exchange, 200, String.format("{\"name\": \"%s\", \"done\": true, \"response\": {\"name\": \"%s\", \"resultsUri\": \"https://checks.area120.google.com/console/dashboard/%s\"}}",
+                    name, reportName, matcher.group(3)));
+        }
+    }
+
+    private void drainUpload(InputStream body) throws IOException {
+        byte[] buffer = new byte[16 * 1024];
+        int n;
+        while ((n = body.read(buffer)) >= 0) {
+            long rate = uploadBytesPerSecond;
+            if (rate > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(n * 1_000_000_000L / rate);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean injectError(HttpExchange exchange) throws IOException {
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < tooManyRequestsRate) {
+            injectedErrors.increment();
+            respond(exchange, 429, "{\"error\": {\"code\": 429, \"status\": \"RESOURCE_EXHAUSTED\"}}");
+            return true;
+        }
+        if (roll < tooManyRequestsRate + serverErrorRate) {
+            injectedErrors.increment();
+            respond(exchange, 503, "{\"error\": {\"code\": 503, \"status\": \"UNAVAILABLE\"}}");
+            return true;
+        }
+        return false;
+    }
+
+    private void count(String kind) {
+        requestCounts.computeIfAbsent(kind, k -> new LongAdder()).increment();
+    }
+
+    private static void respond(HttpExchange exchange, int statusCode, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,110 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ Simulates 1,000 builds waiting on a Checks operation at the same time, each wait being a blocking call,
+ and prints the platform threads and heap used by each backend of ChecksExecutors.
+
+ Skipped by default like UploadToChecksLoadTest, run it with:
+   mvn test -Dtest=ChecksExecutorsLoadTest -Dgooglechecks.loadTest=true
+ */
+public class ChecksExecutorsLoadTest {
+    private static final int CONCURRENT_WAITS = 1000;
+    private static final int POOL_SIZE = 32;
+    private static final long WAIT_MILLIS = 100;
+
+    @BeforeClass
+    public static void enabled() {
+        Assume.assumeTrue("Load test disabled, run with -D" + UploadToChecksLoadTest.PREFIX + "=true", Boolean.getBoolean(UploadToChecksLoadTest.PREFIX));
+    }
+
+    @Test
+    public void testBoundedPoolWith1000ConcurrentWaits() throws Exception {
+        ExecutorService executor = ChecksExecutors.newBoundedPool(POOL_SIZE);
+        Result result = run("bounded pool", executor);
+        Assert.assertTrue("peak threads=" + result.peakThreads, result.peakThreads <= result.baselineThreads + POOL_SIZE + 8);
+    }
+
+    @Test
+    public void testVirtualThreadsWith1000ConcurrentWaits() throws Exception {
+        ExecutorService executor = ChecksExecutors.newVirtualThreadExecutor();
+        Assume.assumeNotNull(executor);
+        Result result = run("virtual threads", executor);
+        // all the waits run at once, on carrier threads only
+        Assert.assertTrue("elapsed=" + result.elapsedMillis, result.elapsedMillis < CONCURRENT_WAITS * WAIT_MILLIS / POOL_SIZE);
+        Assert.assertTrue("peak threads=" + result.peakThreads, result.peakThreads < result.baselineThreads + CONCURRENT_WAITS / 2);
+    }
+
+    private Result run(String backend, ExecutorService executor) throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        Result result = new Result();
+        result.baselineThreads = threads.getThreadCount();
+        long baselineHeap = memory.getHeapMemoryUsage().getUsed();
+        AtomicLong peakHeap = new AtomicLong(baselineHeap);
+        threads.resetPeakThreadCount();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max), 0, 10, TimeUnit.MILLISECONDS);
+
+        CountDownLatch done = new CountDownLatch(CONCURRENT_WAITS);
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < CONCURRENT_WAITS; i++) {
+                executor.submit(() -> {
+                    try {
+                        Thread.sleep(WAIT_MILLIS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    done.countDown();
+                });
+            }
+            Assert.assertTrue(done.await(2, TimeUnit.MINUTES));
+            sampler.shutdownNow();
+            result.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            result.peakThreads = threads.getPeakThreadCount();
+            System.out.printf("%s: %d waits in %d ms, platform threads %d -> %d, peak heap +%d KB%n",
+                    backend, CONCURRENT_WAITS, result.elapsedMillis, result.baselineThreads, result.peakThreads,
+                    (peakHeap.get() - baselineHeap) / 1024);
+        } finally {
+            sampler.shutdownNow();
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    private static class Result {
+        int baselineThreads;
+        int peakThreads;
+        long elapsedMillis;
+    }
+}
@@ -0,0 +1,129 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ChecksHttpEngineTest {
+    private HttpServer server;
+    private HttpServer other;
+    private final AtomicReference<String> redirectedAuthorization = new AtomicReference<>();
+    private final AtomicReference<byte[]> received = new AtomicReference<>();
+    private final AtomicReference<String> projectHeader = new AtomicReference<>();
+
+    @Before
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/echo", exchange -> {
+            received.set(exchange.getRequestBody().readAllBytes());
+            projectHeader.set(exchange.getRequestHeaders().getFirst("X-Goog-User-Project"));
+            byte[] body = ("{\"size\": " + received.get().length + "}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.createContext("/missing", exchange -> {
+            byte[] body = "not found".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(404, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        // another host, e.g. where a compromised or misconfigured proxy redirects
+        other = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        other.createContext("/", exchange -> {
+            redirectedAuthorization.set(String.valueOf(exchange.getRequestHeaders().getFirst("Authorization")));
+            byte[] body = "redirected".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        other.start();
+        server.createContext("/redirect", exchange -> {
+            exchange.getResponseHeaders().add("Location", "http://127.0.0.1:" + other.getAddress().getPort() + "/elsewhere");
+            exchange.sendResponseHeaders(302, -1);
+            exchange.close();
+        });
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        other.stop(0);
+    }
+
+    @Test
+    public void testNetHttpEngine() throws Exception {
+        assertEngine(new NetHttpEngine());
+    }
+
+    @Test
+    public void testJavaHttpClientEngine() throws Exception {
+        assertEngine(new JavaHttpClientEngine());
+    }
+
+    private void assertEngine(ChecksHttpEngine engine) throws Exception {
+        byte[] data = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(data);
+        ChecksHttpEngine.Request upload = new ChecksHttpEngine.Request("POST", url("/echo"))
+                .header("X-Goog-User-Project", "project")
+                .body(new ChecksHttpEngine.Body("application/octet-stream", data.length, () -> new ByteArrayInputStream(data)));
+        ChecksHttpEngine.Response response = engine.send(upload);
+        Assert.assertEquals(200, response.getStatusCode());
+        Assert.assertEquals("{\"size\": " + data.length + "}", response.getBody());
+        Assert.assertArrayEquals(data, received.get());
+        Assert.assertEquals("project", projectHeader.get());
+
+        // unknown length
+        engine.send(new ChecksHttpEngine.Request("POST", url("/echo"))
+                .body(new ChecksHttpEngine.Body("application/octet-stream", -1, () -> new ByteArrayInputStream(data))));
+        Assert.assertArrayEquals(data, received.get());
+
+        // concurrent requests
+        CompletableFuture<?>[] polls = new CompletableFuture<?>[50];
+        for (int i = 0; i < polls.length; i++) {
+            polls[i] = engine.sendAsync(new ChecksHttpEngine.Request("GET", url("/echo")));
+        }
+        CompletableFuture.allOf(polls).get();
+
+        // errors are returned, not thrown
+        ChecksHttpEngine.Response missing = engine.send(new ChecksHttpEngine.Request("GET", url("/missing")));
+        Assert.assertFalse(missing.isSuccessStatusCode());
+        Assert.assertEquals(404, missing.getStatusCode());
+        Assert.assertEquals("not found", missing.getBody());
+
+        // the access token isn't sent to another host
+        ChecksHttpEngine.Response redirected = engine.send(new ChecksHttpEngine.Request("GET", url("/redirect"))
+                .header("Authorization", "Bearer token"));
+        Assert.assertEquals("redirected", redirected.getBody());
+        Assert.assertEquals("null", redirectedAuthorization.get());
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+}
@@ -0,0 +1,134 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import io.jenkins.plugins.googlechecks.models.GoogleChecksCheck;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ChecksResultsStoreTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void testQueries() throws Exception {
+        ChecksResultsStore store = new ChecksResultsStore(tmpFolder.newFolder());
+        long before = System.currentTimeMillis();
+        store.record("1", "12", "app-a/main", 1, "accounts/1/apps/12/reports/1", Arrays.asList(
+                new GoogleChecksCheck("DATA_LEAK", "FAILED", "PRIORITY"),
+                new GoogleChecksCheck("PERMISSIONS", "PASSED", "POTENTIAL")));
+        store.record("1", "13", "app-b/main", 7, "accounts/1/apps/13/reports/2", Arrays.asList(
+                new GoogleChecksCheck("DATA_LEAK", "FAILED", "PRIORITY"),
+                new GoogleChecksCheck("PERMISSIONS", "FAILED", "POTENTIAL")));
+        store.record("1", "12", "app-a/main", 2, "accounts/1/apps/12/reports/3", Collections.singletonList(
+                new GoogleChecksCheck("DATA_LEAK", "PASSED", "PRIORITY")));
+
+        ChecksResultsStore.Result failedLeaks = store.query(new ChecksResultsStore.Query().type("DATA_LEAK").state("FAILED").groupBy("app"), job -> true);
+        Assert.assertEquals(2, failedLeaks.getTotal());
+        Assert.assertEquals(Map.of("1/12", 1, "1/13", 1), failedLeaks.getGroups());
+
+        ChecksResultsStore.Result app12 = store.query(new ChecksResultsStore.Query().appId("12"), job -> true);
+        Assert.assertEquals(2, app12.getReports());
+        Assert.assertEquals(3, app12.getTotal());
+        Assert.assertEquals(2, app12.getRows().get(2).get("build"));
+
+        ChecksResultsStore.Result potential = store.query(new ChecksResultsStore.Query().severity("POTENTIAL").state("FAILED"), job -> true);
+        Assert.assertEquals(1, potential.getTotal());
+        Assert.assertEquals("app-b/main", potential.getRows().get(0).get("job"));
+
+        // unknown values and empty time ranges
+        Assert.assertEquals(0, store.query(new ChecksResultsStore.Query().type("UNKNOWN"), job -> true).getTotal());
+        Assert.assertEquals(0, store.query(new ChecksResultsStore.Query().until(before - 1), job -> true).getTotal());
+        Assert.assertEquals(5, store.query(new ChecksResultsStore.Query().since(before), job -> true).getTotal());
+
+        // jobs hidden from the user
+        ChecksResultsStore.Result visible = store.query(new ChecksResultsStore.Query().groupBy("job"), job -> job.startsWith("app-a/"));
+        Assert.assertEquals(Map.of("app-a/main", 3), visible.getGroups());
+    }
+
+    @Test
+    public void testReloadAndRecoverFromPartialWrite() throws Exception {
+        File dir = tmpFolder.newFolder();
+        List<GoogleChecksCheck> checks = Collections.singletonList(new GoogleChecksCheck("DATA_LEAK", "FAILED", "PRIORITY"));
+        ChecksResultsStore store = new ChecksResultsStore(dir);
+        store.record("1", "12", "job", 1, "report-1", checks);
+        store.record("1", "12", "job", 2, "report-2", checks);
+
+        // a crash in the middle of the last record
+        File reports = new File(dir, "reports.log");
+        try (RandomAccessFile raf = new RandomAccessFile(reports, "rw")) {
+            raf.setLength(raf.length() - 5);
+        }
+
+        ChecksResultsStore reloaded = new ChecksResultsStore(dir);
+        Assert.assertEquals(1, reloaded.getReportCount());
+        reloaded.record("1", "12", "job", 3, "report-3", checks);
+
+        ChecksResultsStore.Result result = new ChecksResultsStore(dir).query(new ChecksResultsStore.Query().appId("12"), job -> true);
+        Assert.assertEquals(2, result.getReports());
+        Assert.assertEquals("report-3", result.getRows().get(1).get("report"));
+    }
+
+    @Test
+    public void testRecoverFromFailedWrite() throws Exception {
+        File dir = tmpFolder.newFolder();
+        List<GoogleChecksCheck> checks = Collections.singletonList(new GoogleChecksCheck("DATA_LEAK", "FAILED", "PRIORITY"));
+        AtomicBoolean fail = new AtomicBoolean();
+        ChecksResultsStore store = new ChecksResultsStore(dir) {
+            @Override
+            OutputStream newOutputStream(File file) throws IOException {
+                return new FilterOutputStream(super.newOutputStream(file)) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        if (file.getName().equals("reports.log") && fail.getAndSet(false)) {
+                            // the disk fills up in the middle of the record
+                            out.write(b, off, len / 2);
+                            throw new IOException("No space left on device");
+                        }
+                        out.write(b, off, len);
+                    }
+                };
+            }
+        };
+        store.record("1", "12", "job", 1, "report-1", checks);
+        fail.set(true);
+        try {
+            store.record("1", "12", "job", 2, "report-2", checks);
+            Assert.fail("recorded on a full disk");
+        } catch (IOException expected) {
+            Assert.assertEquals("No space left on device", expected.getMessage());
+        }
+        store.record("1", "12", "job", 3, "report-3", checks);
+        Assert.assertEquals(2, store.getReportCount());
+
+        ChecksResultsStore.Result result = new ChecksResultsStore(dir).query(new ChecksResultsStore.Query().appId("12"), job -> true);
+        Assert.assertEquals(2, result.getReports());
+        Assert.assertEquals("report-1", result.getRows().get(0).get("report"));
+        Assert.assertEquals("report-3", result.getRows().get(1).get("report"));
+    }
+}
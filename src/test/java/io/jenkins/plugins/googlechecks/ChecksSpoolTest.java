@@ -0,0 +1,64 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.google.auth.oauth2.GoogleAuthException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.net.http.HttpTimeoutException;
+
+public class ChecksSpoolTest {
+    @Test
+    public void testUnreachableWhenWrapped() {
+        IOException e = new IOException("upload failed", new ConnectException("Connection refused"));
+        Assert.assertTrue(ChecksSpool.isUnreachable(e));
+        Assert.assertTrue(ChecksSpool.isRetryable(e));
+
+        Assert.assertTrue(ChecksSpool.isUnreachable(new UnknownHostException("checks.googleapis.com")));
+        Assert.assertTrue(ChecksSpool.isUnreachable(new RuntimeException(new HttpTimeoutException("request timed out"))));
+        Assert.assertFalse(ChecksSpool.isUnreachable(new IOException("No such file")));
+        Assert.assertFalse(ChecksSpool.isRetryable(new IOException("No such file")));
+    }
+
+    @Test
+    public void testRetryableStatusCodes() {
+        Assert.assertTrue(ChecksSpool.isRetryable(status(429)));
+        Assert.assertTrue(ChecksSpool.isRetryable(status(503)));
+        Assert.assertTrue(ChecksSpool.isRetryable(new IOException("upload failed", status(500))));
+        Assert.assertFalse(ChecksSpool.isRetryable(status(403)));
+        Assert.assertFalse(ChecksSpool.isRetryable(status(404)));
+        // the API answered, it isn't down
+        Assert.assertFalse(ChecksSpool.isUnreachable(status(503)));
+    }
+
+    @Test
+    public void testAuthenticationFailures() {
+        // e.g. a revoked key
+        GoogleAuthException revoked = new GoogleAuthException(false, new IOException("invalid_grant"));
+        Assert.assertFalse(ChecksSpool.isRetryable(revoked));
+        Assert.assertFalse(ChecksSpool.isRetryable(new IOException("authentication failed", revoked)));
+        Assert.assertTrue(ChecksSpool.isRetryable(new GoogleAuthException(true, new IOException("token endpoint unavailable"))));
+    }
+
+    private static HttpResponseException status(int statusCode) {
+        return new HttpResponseException.Builder(statusCode, null, new HttpHeaders()).build();
+    }
+}
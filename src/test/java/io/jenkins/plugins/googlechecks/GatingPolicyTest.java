@@ -0,0 +1,117 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import hudson.AbortException;
+import hudson.FilePath;
+import io.jenkins.plugins.googlechecks.models.GoogleChecksCheck;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class GatingPolicyTest {
+    private static final String POLICY = "{" +
+            "\"severityThreshold\": \"PRIORITY\"," +
+            "\"allowlist\": [\"ALLOWED\"]," +
+            "\"rules\": [" +
+            "  { \"type\": \"STRICT\", \"severityThreshold\": \"OPPORTUNITY\" }," +
+            "  { \"type\": \"BUDGETED\", \"severityThreshold\": \"POTENTIAL\", \"maxFailures\": 2 }" +
+            "]}";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testDefaultThreshold() throws Exception {
+        List<GoogleChecksCheck> checks = new ArrayList<>();
+        checks.add(new GoogleChecksCheck("OTHER", "FAILED", "POTENTIAL"));
+        checks.add(new GoogleChecksCheck("OTHER", "PASSED", "PRIORITY"));
+        Assert.assertTrue(GatingPolicy.compile(POLICY).evaluate(checks).isValid());
+
+        checks.add(new GoogleChecksCheck("OTHER", "FAILED", "PRIORITY"));
+        GatingPolicy.Result result = GatingPolicy.compile(POLICY).evaluate(checks);
+        Assert.assertFalse(result.isValid());
+        Assert.assertEquals(1, result.getFailingChecks().size());
+    }
+
+    @Test
+    public void testPerTypeThresholdAndAllowlist() throws Exception {
+        List<GoogleChecksCheck> checks = new ArrayList<>();
+        checks.add(new GoogleChecksCheck("ALLOWED", "FAILED", "PRIORITY"));
+        Assert.assertTrue(GatingPolicy.compile(POLICY).evaluate(checks).isValid());
+
+        checks.add(new GoogleChecksCheck("STRICT", "FAILED", "OPPORTUNITY"));
+        Assert.assertFalse(GatingPolicy.compile(POLICY).evaluate(checks).isValid());
+    }
+
+    @Test
+    public void testBudget() throws Exception {
+        List<GoogleChecksCheck> checks = new ArrayList<>();
+        checks.add(new GoogleChecksCheck("BUDGETED", "FAILED", "POTENTIAL"));
+        checks.add(new GoogleChecksCheck("BUDGETED", "FAILED", "PRIORITY"));
+        checks.add(new GoogleChecksCheck("BUDGETED", "FAILED", "OPPORTUNITY"));
+        Assert.assertTrue(GatingPolicy.compile(POLICY).evaluate(checks).isValid());
+
+        checks.add(new GoogleChecksCheck("BUDGETED", "FAILED", "POTENTIAL"));
+        GatingPolicy.Result result = GatingPolicy.compile(POLICY).evaluate(checks);
+        Assert.assertFalse(result.isValid());
+        Assert.assertEquals(1, result.getViolations().size());
+        Assert.assertEquals(3, result.getFailingChecks().size());
+    }
+
+    @Test
+    public void testCompiledOnce() throws Exception {
+        Assert.assertSame(GatingPolicy.compile(POLICY), GatingPolicy.compile(POLICY));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidThreshold() throws Exception {
+        GatingPolicy.compile("{\"severityThreshold\": \"CRITICAL\"}");
+    }
+
+    @Test
+    public void testLoadPolicyFileFromWorkspace() throws Exception {
+        File workspace = tmp.newFolder("workspace");
+        Files.write(new File(workspace, "policy.json").toPath(), POLICY.getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(POLICY, GatingPolicy.load(null, "policy.json", new FilePath(workspace)));
+        Assert.assertEquals("{}", GatingPolicy.load("{}", "policy.json", new FilePath(workspace)));
+    }
+
+    @Test
+    public void testPolicyFileOutsideWorkspace() throws Exception {
+        File workspace = tmp.newFolder("workspace");
+        File outside = tmp.newFile("secret.json");
+        for (String path : new String[] {outside.getAbsolutePath(), "../secret.json"}) {
+            try {
+                GatingPolicy.load(null, path, new FilePath(workspace));
+                Assert.fail("read " + path);
+            } catch (AbortException expected) {
+                Assert.assertTrue(expected.getMessage().contains("inside the workspace"));
+            }
+        }
+    }
+
+    @Test(expected = AbortException.class)
+    public void testPolicyFileWithoutWorkspace() throws Exception {
+        GatingPolicy.load(null, "policy.json", null);
+    }
+}
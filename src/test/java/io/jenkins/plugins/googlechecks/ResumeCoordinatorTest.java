@@ -0,0 +1,73 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ResumeCoordinatorTest {
+    private static final long NOW = 1_000_000_000L;
+
+    @Test
+    public void testFirstPollsAreSpreadByDeadline() {
+        Random random = new Random(42);
+        List<ResumeCoordinator.Resumption> batch = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            batch.add(resumption(NOW + 60_000 + random.nextInt(30 * 60_000)));
+        }
+        long[] delays = ResumeCoordinator.schedule(batch, NOW, random);
+
+        long slot = ResumeCoordinator.WINDOW_MILLIS / batch.size();
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                Assert.assertTrue(batch.get(i - 1).deadline <= batch.get(i).deadline);
+            }
+            // each poll in its own slot of the window
+            Assert.assertTrue(delays[i] >= i * slot);
+            Assert.assertTrue(delays[i] < (i + 1) * slot);
+        }
+        Assert.assertTrue(delays[delays.length - 1] < ResumeCoordinator.WINDOW_MILLIS);
+    }
+
+    @Test
+    public void testSmallBatchesResumeQuickly() {
+        List<ResumeCoordinator.Resumption> batch = new ArrayList<>();
+        batch.add(resumption(NOW + 60_000));
+        batch.add(resumption(NOW + 30_000));
+        long[] delays = ResumeCoordinator.schedule(batch, NOW, new Random(42));
+        Assert.assertTrue(delays[1] < 2 * ResumeCoordinator.SPACING_MILLIS);
+        Assert.assertEquals(NOW + 30_000, batch.get(0).deadline);
+    }
+
+    @Test
+    public void testPastDeadlinesPollRightAway() {
+        List<ResumeCoordinator.Resumption> batch = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            batch.add(resumption(NOW + 60_000));
+        }
+        batch.add(resumption(NOW - 1));
+        long[] delays = ResumeCoordinator.schedule(batch, NOW, new Random(42));
+        Assert.assertEquals(NOW - 1, batch.get(0).deadline);
+        Assert.assertEquals(0, delays[0]);
+    }
+
+    private static ResumeCoordinator.Resumption resumption(long deadline) {
+        return new ResumeCoordinator.Resumption(deadline, "credentials", null, delay -> { });
+    }
+}
@@ -0,0 +1,221 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RoutingHttpEngineTest {
+    private HttpServer first;
+    private HttpServer second;
+    private final AtomicInteger firstHits = new AtomicInteger();
+    private final AtomicInteger secondHits = new AtomicInteger();
+    private volatile long firstDelayMillis;
+    private volatile int firstStatus = 200;
+    private volatile long secondDelayMillis;
+
+    @Before
+    public void startServers() throws IOException {
+        first = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        first.setExecutor(Executors.newCachedThreadPool());
+        first.createContext("/", exchange -> {
+            firstHits.incrementAndGet();
+            try {
+                Thread.sleep(firstDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, firstStatus, "first");
+        });
+        first.start();
+        second = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        second.createContext("/", exchange -> {
+            secondHits.incrementAndGet();
+            try {
+                Thread.sleep(secondDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200, "second");
+        });
+        second.start();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    @After
+    public void stopServers() {
+        first.stop(0);
+        second.stop(0);
+    }
+
+    private String endpoint(HttpServer server) {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    private RoutingHttpEngine engine() {
+        return new RoutingHttpEngine(new JavaHttpClientEngine(), Arrays.asList(endpoint(first), endpoint(second)));
+    }
+
+    private ChecksHttpEngine.Request get() {
+        return new ChecksHttpEngine.Request("GET", endpoint(first) + "/v1alpha/accounts/1/apps/12/operations/123");
+    }
+
+    @Test
+    public void testParseEndpoints() {
+        Assert.assertEquals(Arrays.asList("https://a.example.com", "https://b.example.com"),
+                RoutingHttpEngine.parseEndpoints("https://a.example.com/, https://b.example.com"));
+        Assert.assertEquals(Arrays.asList("https://checks.googleapis.com"), RoutingHttpEngine.parseEndpoints("https://checks.googleapis.com"));
+    }
+
+    @Test
+    public void testSlowEndpointIsHedged() throws Exception {
+        firstDelayMillis = 3000;
+        long start = System.nanoTime();
+        ChecksHttpEngine.Response response = engine().sendAsync(get()).get();
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        Assert.assertEquals("second", response.getBody());
+        // sent to the second endpoint after the default hedge delay, without waiting for the first one
+        Assert.assertTrue("took " + millis + "ms", millis >= RoutingHttpEngine.DEFAULT_HEDGE_DELAY_MILLIS && millis < 2000);
+        Assert.assertEquals(1, firstHits.get());
+        Assert.assertEquals(1, secondHits.get());
+    }
+
+    @Test
+    public void testFailingEndpointFailsOverAndIsAvoided() throws Exception {
+        firstStatus = 503;
+        RoutingHttpEngine engine = engine();
+        long start = System.nanoTime();
+        Assert.assertEquals("second", engine.send(get()).getBody());
+        // right away, not after the hedge delay
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < RoutingHttpEngine.DEFAULT_HEDGE_DELAY_MILLIS);
+
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals("second", engine.send(get()).getBody());
+        }
+        Assert.assertEquals(1, firstHits.get());
+        Assert.assertTrue(RoutingHttpEngine.health(endpoint(first)).getErrorRate() > 0.5);
+    }
+
+    @Test
+    public void testFastFailingEndpointIsRankedAfterSlowerHealthyOne() throws Exception {
+        // a failing endpoint answering right away mustn't look faster than a healthy one
+        firstStatus = 503;
+        secondDelayMillis = 100;
+        RoutingHttpEngine engine = engine();
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals("second", engine.send(get()).getBody());
+        }
+        Assert.assertEquals(Arrays.asList(endpoint(second), endpoint(first)), engine.rank());
+
+        // requests that are sent once go to the healthy endpoint
+        byte[] data = "binary".getBytes(StandardCharsets.UTF_8);
+        ChecksHttpEngine.Request upload = new ChecksHttpEngine.Request("POST", endpoint(first) + "/upload/v1alpha/accounts/1/apps/12/reports:analyzeUpload")
+                .body(new ChecksHttpEngine.Body("application/octet-stream", data.length, () -> new ByteArrayInputStream(data)));
+        ChecksHttpEngine.Response response = engine.send(upload);
+        Assert.assertEquals(200, response.getStatusCode());
+        Assert.assertEquals("second", response.getBody());
+        Assert.assertEquals(1, firstHits.get());
+    }
+
+    @Test
+    public void testAllEndpointsFailing() throws Exception {
+        firstStatus = 503;
+        second.stop(0);
+        // the last failure is returned: the second endpoint refused the connection after the first one answered 503
+        try {
+            engine().send(get());
+            Assert.fail("expected the connection error of the second endpoint");
+        } catch (IOException expected) {
+            Assert.assertEquals(1, firstHits.get());
+        }
+    }
+
+    @Test
+    public void testUploadIsNotHedged() throws Exception {
+        firstDelayMillis = 1000;
+        byte[] data = "binary".getBytes(StandardCharsets.UTF_8);
+        ChecksHttpEngine.Request upload = new ChecksHttpEngine.Request("POST", endpoint(first) + "/upload/v1alpha/accounts/1/apps/12/reports:analyzeUpload")
+                .body(new ChecksHttpEngine.Body("application/octet-stream", data.length, () -> new ByteArrayInputStream(data)));
+        Assert.assertEquals("first", engine().send(upload).getBody());
+        Assert.assertEquals(1, firstHits.get());
+        Assert.assertEquals(0, secondHits.get());
+    }
+
+    @Test
+    public void testPoolSizedBurstOfBlockingCalls() throws Exception {
+        // the steps call send() from ChecksExecutors, where NetHttpEngine runs its requests too
+        firstStatus = 503;
+        RoutingHttpEngine engine = new RoutingHttpEngine(new NetHttpEngine(), Arrays.asList(endpoint(first), endpoint(second)));
+        CountDownLatch started = new CountDownLatch(ChecksExecutors.POOL_SIZE);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < ChecksExecutors.POOL_SIZE; i++) {
+            results.add(ChecksExecutors.get().submit(() -> {
+                // every thread of a bounded pool is busy before any request is sent
+                started.countDown();
+                started.await();
+                return engine.send(get()).getBody();
+            }));
+        }
+        for (Future<String> result : results) {
+            Assert.assertEquals("second", result.get(30, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testTailLatencyWithDegradedEndpoint() throws Exception {
+        RoutingHttpEngine engine = engine();
+        // both endpoints are measured while healthy
+        for (int i = 0; i < 40; i++) {
+            engine.send(get());
+        }
+        // then the preferred path degrades: every response takes a second
+        firstDelayMillis = 1000;
+        long[] millis = new long[100];
+        for (int i = 0; i < millis.length; i++) {
+            long start = System.nanoTime();
+            engine.sendAsync(get()).get();
+            millis[i] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+        Arrays.sort(millis);
+        long p99 = millis[98];
+        Assert.assertTrue("p99 " + p99 + "ms", p99 < 1000);
+    }
+}
@@ -0,0 +1,141 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Random;
+
+public class UploadPipelineTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void testSendsAndHashesInOnePass() throws Exception {
+        // a few buffers and a partial one
+        byte[] data = new byte[UploadPipeline.BUFFER_SIZE * 5 + 123];
+        new Random(42).nextBytes(data);
+        File binary = tmpFolder.newFile();
+        Files.write(binary.toPath(), data);
+
+        CountingChannel channel = new CountingChannel(FileChannel.open(binary.toPath(), StandardOpenOption.READ));
+        UploadPipeline.DigestStage sha256 = UploadPipeline.DigestStage.sha256();
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        try (UploadPipeline pipeline = new UploadPipeline(channel, data.length).addStage(sha256)) {
+            pipeline.openStream().transferTo(sent);
+            Assert.assertEquals(data.length, pipeline.getBytesSent());
+        }
+
+        Assert.assertArrayEquals(data, sent.toByteArray());
+        Assert.assertEquals(data.length, channel.bytesRead);
+        Assert.assertEquals(hex(MessageDigest.getInstance("SHA-256").digest(data)), sha256.getHexDigest());
+    }
+
+    @Test
+    public void testEmptyBinary() throws Exception {
+        File binary = tmpFolder.newFile();
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        try (UploadPipeline pipeline = UploadPipeline.forFile(binary.toPath())) {
+            pipeline.openStream().transferTo(sent);
+        }
+        Assert.assertEquals(0, sent.size());
+    }
+
+    @Test
+    public void testBuffersAreKeptUntilTheStreamIsDone() throws Exception {
+        byte[] data = new byte[UploadPipeline.BUFFER_SIZE * 5];
+        File binary = tmpFolder.newFile();
+        Files.write(binary.toPath(), data);
+        UploadPipeline.BUFFER_POOL.clear();
+
+        // e.g. the request failed early while the HttpClient is still sending the body on another thread
+        UploadPipeline pipeline = UploadPipeline.forFile(binary.toPath());
+        InputStream in = pipeline.openStream();
+        Assert.assertEquals(1000, in.read(new byte[1000]));
+        pipeline.close();
+        try {
+            in.read(new byte[1000]);
+            Assert.fail("read from a closed pipeline");
+        } catch (IOException expected) {
+            Assert.assertEquals("The upload pipeline is closed", expected.getMessage());
+        }
+        // another upload can't get a buffer that may still be read
+        Assert.assertTrue(UploadPipeline.BUFFER_POOL.isEmpty());
+
+        in.close();
+        for (int i = 0; i < 50 && UploadPipeline.BUFFER_POOL.isEmpty(); i++) {
+            // the reader exits asynchronously
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(2, UploadPipeline.BUFFER_POOL.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCanOnlyBeConsumedOnce() throws Exception {
+        try (UploadPipeline pipeline = UploadPipeline.forFile(tmpFolder.newFile().toPath())) {
+            pipeline.openStream();
+            pipeline.openStream();
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static class CountingChannel implements ReadableByteChannel {
+        private final ReadableByteChannel channel;
+        private long bytesRead;
+
+        CountingChannel(ReadableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            int n = channel.read(dst);
+            if (n > 0) {
+                bytesRead += n;
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class UploadSchedulerTest {
+    @Test
+    public void testHighPriorityGoesFirst() {
+        UploadScheduler scheduler = new UploadScheduler(() -> 1);
+        UploadScheduler.Ticket running = scheduler.submit("nightly", UploadPriority.NORMAL);
+        Assert.assertTrue(running.isGranted());
+
+        List<UploadScheduler.Ticket> nightly = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            nightly.add(scheduler.submit("nightly", UploadPriority.NORMAL));
+        }
+        UploadScheduler.Ticket hotfix = scheduler.submit("hotfix", UploadPriority.HIGH);
+        Assert.assertEquals(1, hotfix.getPosition());
+        Assert.assertEquals(2, nightly.get(0).getPosition());
+
+        running.close();
+        Assert.assertTrue(hotfix.isGranted());
+        Assert.assertFalse(nightly.get(0).isGranted());
+        Assert.assertTrue(hotfix.getWaitedMillis() >= 0);
+    }
+
+    @Test
+    public void testJobsTakeTurns() {
+        UploadScheduler scheduler = new UploadScheduler(() -> 1);
+        UploadScheduler.Ticket running = scheduler.submit("other", UploadPriority.NORMAL);
+
+        List<UploadScheduler.Ticket> fanOut = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            fanOut.add(scheduler.submit("fan-out", UploadPriority.NORMAL));
+        }
+        UploadScheduler.Ticket single = scheduler.submit("single", UploadPriority.NORMAL);
+        Assert.assertEquals(2, single.getPosition());
+
+        running.close();
+        Assert.assertTrue(fanOut.get(0).isGranted());
+        fanOut.get(0).close();
+        Assert.assertTrue(single.isGranted());
+        Assert.assertFalse(fanOut.get(1).isGranted());
+    }
+
+    @Test
+    public void testLeavingTheQueue() {
+        UploadScheduler scheduler = new UploadScheduler(() -> 1);
+        UploadScheduler.Ticket running = scheduler.submit("a", UploadPriority.NORMAL);
+        UploadScheduler.Ticket aborted = scheduler.submit("b", UploadPriority.NORMAL);
+        UploadScheduler.Ticket next = scheduler.submit("c", UploadPriority.NORMAL);
+
+        aborted.close();
+        Assert.assertEquals(1, next.getPosition());
+        running.close();
+        Assert.assertFalse(aborted.isGranted());
+        Assert.assertTrue(next.isGranted());
+        Assert.assertEquals(1, scheduler.getRunning());
+    }
+
+    @Test
+    public void testUnlimited() {
+        UploadScheduler scheduler = new UploadScheduler(() -> 0);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(scheduler.submit("job", UploadPriority.LOW).isGranted());
+        }
+    }
+}
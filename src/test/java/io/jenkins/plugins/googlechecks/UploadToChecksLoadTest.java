@@ -0,0 +1,174 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.jenkins.plugins.googlechecks;
+
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.queue.QueueTaskFuture;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.recipes.WithTimeout;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/*
+ Drives many concurrent uploadToChecks pipelines against ChecksApiSimulator and prints the API QPS,
+ controller threads, heap and end-to-end latency percentiles, as a baseline for scaling changes.
+
+ Skipped by default, run it with:
+   mvn test -Dtest=UploadToChecksLoadTest -Dgooglechecks.loadTest=true [-Dgooglechecks.loadTest.builds=200]
+     [-Dgooglechecks.loadTest.analysisLatencyMillis=5000] [-Dgooglechecks.loadTest.tooManyRequestsRate=0.01]
+     [-Dgooglechecks.loadTest.serverErrorRate=0.01] [-Dgooglechecks.loadTest.uploadBytesPerSecond=1048576]
+     [-Dgooglechecks.loadTest.binarySize=1048576]
+ */
+public class UploadToChecksLoadTest {
+    static final String PREFIX = "googlechecks.loadTest";
+
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private ChecksApiSimulator simulator;
+    private int checkOperationInterval;
+
+    // before the rules, so that Jenkins doesn't start for a skipped test
+    @BeforeClass
+    public static void enabled() {
+        Assume.assumeTrue("Load test disabled, run with -D" + PREFIX + "=true", Boolean.getBoolean(PREFIX));
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new ChecksApiSimulator()
+                .withAnalysisLatency(Long.getLong(PREFIX + ".analysisLatencyMillis", 5000))
+                .withTooManyRequestsRate(Double.parseDouble(System.getProperty(PREFIX + ".tooManyRequestsRate", "0")))
+                .withServerErrorRate(Double.parseDouble(System.getProperty(PREFIX + ".serverErrorRate", "0")))
+                .withUploadBytesPerSecond(Long.getLong(PREFIX + ".uploadBytesPerSecond", 0));
+        // poll every second, the simulated analysis is much shorter than a real one
+        checkOperationInterval = AbstractChecksReportStepExecution.CHECK_OPERATION_INTERVAL;
+        AbstractChecksReportStepExecution.CHECK_OPERATION_INTERVAL = 1;
+        mockValidGoogleCredentials();
+    }
+
+    @After
+    public void tearDown() {
+        if (simulator != null) {
+            simulator.close();
+            AbstractChecksReportStepExecution.CHECK_OPERATION_INTERVAL = checkOperationInterval;
+        }
+    }
+
+    @Test
+    @WithTimeout(1800)
+    public void testConcurrentUploads() throws Exception {
+        int builds = Integer.getInteger(PREFIX + ".builds", 200);
+        File binary = tmpFolder.newFile("app.apk");
+        Files.write(binary.toPath(), new byte[Integer.getInteger(PREFIX + ".binarySize", 1024 * 1024)]);
+
+        List<WorkflowJob> jobs = new ArrayList<>();
+        for (int i = 0; i < builds; i++) {
+            WorkflowJob job = jenkins.createProject(WorkflowJob.class, "load-" + i);
+            job.setDefinition(new CpsFlowDefinition("uploadToChecks(" +
+                    "baseUrl: '" + simulator.getBaseUrl() + "'," +
+                    "credentialsId: 'checks-service-account-content'," +
+                    "projectId: 'checks-upload'," +
+                    "accountId: '1'," +
+                    "appId: '" + i + "'," +
+                    "binaryPath: \"" + binary.getAbsolutePath() + "\"," +
+                    "failOn: 'ALL'," +
+                    ")", true));
+            jobs.add(job);
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        int baselineThreads = threads.getThreadCount();
+        AtomicLong peakHeap = new AtomicLong();
+        threads.resetPeakThreadCount();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max), 0, 100, TimeUnit.MILLISECONDS);
+
+        List<WorkflowRun> runs = new ArrayList<>();
+        try {
+            List<QueueTaskFuture<WorkflowRun>> futures = new ArrayList<>();
+            for (WorkflowJob job : jobs) {
+                futures.add(job.scheduleBuild2(0));
+            }
+            for (QueueTaskFuture<WorkflowRun> future : futures) {
+                runs.add(future.get());
+            }
+        } finally {
+            sampler.shutdownNow();
+        }
+
+        List<Long> latencies = new ArrayList<>();
+        int failures = 0;
+        for (WorkflowRun run : runs) {
+            latencies.add(run.getDuration());
+            if (run.getResult() != Result.SUCCESS) {
+                failures++;
+            }
+        }
+        Collections.sort(latencies);
+
+        System.out.printf("%d builds, %d failed (%d injected API errors)%n", builds, failures, simulator.getInjectedErrors());
+        System.out.printf("API: %.1f QPS, %d requests (upload=%d, operation=%d, report=%d)%n", simulator.getQps(), simulator.getTotalRequestCount(),
+                simulator.getRequestCount("upload"), simulator.getRequestCount("operation"), simulator.getRequestCount("report"));
+        System.out.printf("Controller: threads %d -> peak %d, peak heap %d MB%n", baselineThreads, threads.getPeakThreadCount(), peakHeap.get() / (1024 * 1024));
+        System.out.printf("End-to-end latency: p50=%d ms, p90=%d ms, p99=%d ms, max=%d ms%n",
+                percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99), latencies.get(latencies.size() - 1));
+
+        Assert.assertEquals(builds, runs.size());
+        if (simulator.getInjectedErrors() == 0) {
+            Assert.assertEquals(0, failures);
+        }
+    }
+
+    private static long percentile(List<Long> sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+
+    private void mockValidGoogleCredentials() throws Exception {
+        GoogleCredentialsHelper mocked = mock(GoogleCredentialsHelper.class);
+        when(mocked.authenticate(anyString(), any(Run.class))).thenReturn("fake token");
+        Field field = GoogleCredentialsHelperFactory.class.getDeclaredField("googleCredentialsHelper");
+        field.setAccessible(true);
+        field.set(GoogleCredentialsHelperFactory.getInstance(), mocked);
+    }
+}
@@ -15,7 +15,18 @@
 package io.jenkins.plugins.googlechecks;
 
 
+import hudson.ExtensionList;
+import hudson.model.Label;
 import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+import io.jenkins.plugins.checks.api.ChecksAnnotation;
+import io.jenkins.plugins.checks.api.ChecksConclusion;
+import io.jenkins.plugins.checks.api.ChecksDetails;
+import io.jenkins.plugins.checks.api.ChecksPublisher;
+import io.jenkins.plugins.checks.api.ChecksPublisherFactory;
+import io.jenkins.plugins.checks.api.ChecksStatus;
 import org.apache.tools.ant.taskdefs.condition.Http;
 import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
@@ -23,13 +34,20 @@ import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.junit.*;
 import org.junit.rules.TemporaryFolder;
 import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
 import org.mockserver.configuration.Configuration;
 import org.mockserver.integration.ClientAndServer;
 import org.mockserver.matchers.Times;
 import org.mockserver.model.HttpRequest;
+import org.mockserver.verify.VerificationTimes;
 
 import java.io.*;
 import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.Mockito.*;
 import static org.mockserver.model.HttpRequest.request;
@@ -90,7 +108,7 @@ public class UploadToChecksStepIntegrationTest {
         WorkflowRun run = jenkins.assertBuildStatus(Result.FAILURE, job.scheduleBuild2(0));
 
         // verify that the pipeline ran as expected.
-        verify(mocked, times(1)).authenticate(null);
+        verify(mocked, times(1)).authenticate(isNull(), any(Run.class));
         String expectedString = "You must provide initialized credentials id (content of your serviceaccount.json)";
         jenkins.assertLogContains(expectedString, run);
     }
@@ -203,11 +221,484 @@ public class UploadToChecksStepIntegrationTest {
         GoogleCredentialsHelper mocked = mockValidGoogleCredentials();
         WorkflowRun run = jenkins.assertBuildStatus(Result.SUCCESS, job.scheduleBuild2(0));
 
-        verify(mocked, times(1)).authenticate(anyString());
+        verify(mocked, times(1)).authenticate(anyString(), any(Run.class));
         String expectedString = "Not waiting for the report to be generated. You'll receive an email once the report is ready.";
         jenkins.assertLogContains(expectedString, run);
     }
 
+    @Test
+    public void testUploadThenAwaitReport() throws Exception {
+        createMockUploadResponse();
+        createMockOperationResponse();
+
+        String report = "{\"checks\": [{ \"severity\": \"PRIORITY\", \"state\": \"FAILED\"}]}";
+        createMockReportResponse("/v1alpha/accounts/1/apps/12/reports/123", report, 200);
+
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class);
+        String script = "def handle = uploadToChecks(" +
+                "baseUrl: 'http://localhost:1080'," +
+                "credentialsId: 'checks-service-account-content'," +
+                "projectId: 'checks-upload'," +
+                "accountId: '1'," +
+                "appId: '12'," +
+                "binaryPath: \"" + tmpApkFile.getAbsolutePath() + "\"," +
+                "waitForReport: false," +
+                ")\n" +
+                "echo 'doing something else'\n" +
+                "awaitChecksReport(handle: handle, severityThreshold: 'PRIORITY', failOn: 'ALL')";
+
+        job.setDefinition(new CpsFlowDefinition(script, true));
+        mockValidGoogleCredentials();
+        WorkflowRun run = jenkins.assertBuildStatus(Result.FAILURE, job.scheduleBuild2(0));
+
+        jenkins.assertLogContains("doing something else", run);
+        jenkins.assertLogContains("Waiting for the report of operationId=123", run);
+        jenkins.assertLogContains("1 issue(s) detected:", run);
+    }
+
+    @Test
+    public void testDashboardShowsLatestStatus() throws Exception {
+        createMockUploadResponse();
+        createMockOperationResponse();
+        String report = "{\"name\": \"accounts/1/apps/12/reports/123\", \"checks\": [{ \"severity\": \"PRIORITY\", \"state\": \"FAILED\"}, { \"severity\": \"POTENTIAL\", \"state\": \"PASSED\"}]}";
+        createMockReportResponse("/v1alpha/accounts/1/apps/12/reports/123", report, 200);
+
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class, "app");
+        String script = "uploadToChecks(" +
+                "baseUrl: 'http://localhost:1080'," +
+                "credentialsId: 'checks-service-account-content'," +
+                "projectId: 'checks-upload'," +
+                "accountId: '1'," +
+                "appId: '12'," +
+                "binaryPath: \"" + tmpApkFile.getAbsolutePath() + "\"," +
+                ")";
+        job.setDefinition(new CpsFlowDefinition(script, true));
+        mockValidGoogleCredentials();
+        jenkins.buildAndAssertSuccess(job);
+
+        List<ChecksDashboard.AppStatus> apps = ChecksDashboard.get().getApps();
+        Assert.assertEquals(1, apps.size());
+        Assert.assertEquals("app", apps.get(0).getJob());
+        Assert.assertEquals(1, apps.get(0).getPriorityFailures());
+        Assert.assertEquals(2, apps.get(0).getChecks());
+        Assert.assertFalse(apps.get(0).isPassed());
+
+        String page = jenkins.createWebClient().goTo("google-checks").getWebResponse().getContentAsString();
+        Assert.assertTrue(page.contains("app #1"));
+    }
+
+    @Test
+    public void testUsageIsCounted() throws Exception {
+        createMockUploadResponse();
+        createMockOperationResponse();
+        createMockReportResponse("/v1alpha/accounts/1/apps/12/reports/123", "{\"checks\": []}", 200);
+
+        WorkflowJob job = jenkins.createFolder("team").createProject(WorkflowJob.class, "app");
+        String script = "uploadToChecks(" +
+                "baseUrl: 'http://localhost:1080'," +
+                "credentialsId: 'checks-service-account-content'," +
+                "projectId: 'checks-upload'," +
+                "accountId: '1'," +
+                "appId: '12'," +
+                "binaryPath: \"" + tmpApkFile.getAbsolutePath() + "\"," +
+                ")";
+        job.setDefinition(new CpsFlowDefinition(script, true));
+        mockValidGoogleCredentials();
+        jenkins.buildAndAssertSuccess(job);
+        // the same binary again
+        jenkins.buildAndAssertSuccess(job);
+
+        List<ChecksUsage.Counters> usage = ChecksUsage.get().getUsage();
+        Assert.assertEquals(1, usage.size());
+        Assert.assertEquals("team/app", usage.get(0).getJob());
+        Assert.assertEquals("checks-upload", usage.get(0).getProjectId());
+        Assert.assertEquals(2, usage.get(0).getUploads());
+        Assert.assertEquals(1, usage.get(0).getDuplicateUploads());
+        Assert.assertEquals(2, usage.get(0).getPolls());
+        Assert.assertEquals(2, usage.get(0).getReportFetches());
+        Assert.assertEquals("team", ChecksUsage.get().getUsage("folder").get(0).getJob());
+
+        ChecksUsage.get().flush();
+        Assert.assertTrue(new File(jenkins.jenkins.getRootDir(), "google-checks/usage.xml").exists());
+        String json = jenkins.createWebClient().goTo("manage/google-checks-usage/json?groupBy=project", "application/json")
+                .getWebResponse().getContentAsString();
+        Assert.assertTrue(json.contains("\"projectId\":\"checks-upload\""));
+        Assert.assertTrue(json.contains("\"uploads\":2"));
+    }
+
+    @Test
+    public void testSpoolOnOutageThenDrain() throws Exception {
+        HttpRequest uploadRequest = request().withPath("/upload/v1alpha/accounts/1/apps/12/reports:analyzeUpload");
+        mockServer.when(uploadRequest, Times.exactly(1)).respond(response().withStatusCode(503));
+
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class);
+        String script = "uploadToChecks(" +
+                "baseUrl: 'http://localhost:1080'," +
+                "credentialsId: 'checks-service-account-content'," +
+                "projectId: 'checks-upload'," +
+                "accountId: '1'," +
+                "appId: '12'," +
+                "binaryPath: \"" + tmpApkFile.getAbsolutePath() + "\"," +
+                "spoolOnFailure: true," +
+                "unstableOnSpool: true," +
+                ")";
+        job.setDefinition(new CpsFlowDefinition(script, true));
+        mockValidGoogleCredentials();
+        WorkflowRun run = jenkins.assertBuildStatus(Result.UNSTABLE, job.scheduleBuild2(0));
+        jenkins.assertLogContains("spooled as", run);
+        Assert.assertEquals(1, ChecksSpool.get().list().size());
+
+        // the API is back
+        createMockUploadResponse();
+        createMockOperationResponse();
+        createMockReportResponse("/v1alpha/accounts/1/apps/12/reports/123", "{\"checks\": [{ \"severity\": \"PRIORITY\", \"state\": \"FAILED\"}]}", 200);
+        ChecksSpoolDrainer drainer = ExtensionList.lookupSingleton(ChecksSpoolDrainer.class);
+        drainer.execute(StreamTaskListener.fromStdout());
+        Assert.assertEquals(ChecksSpoolAction.Status.UPLOADED, run.getAction(ChecksSpoolAction.class).getStatus());
+        drainer.execute(StreamTaskListener.fromStdout());
+
+        ChecksSpoolAction action = run.getAction(ChecksSpoolAction.class);
+        Assert.assertEquals(ChecksSpoolAction.Status.COMPLETED, action.getStatus());
+        Assert.assertFalse(action.getPassed());
+        Assert.assertEquals(1, action.getFailingChecks().size());
+        Assert.assertTrue(ChecksSpool.get().list().isEmpty());
+    }
+
+    @Test
+    public void testDrainerGoesOnAfterServerErrors() throws Exception {
+        mockServer.when(request().withPath("/upload/v1alpha/accounts/1/apps/13/reports:analyzeUpload")).respond(response().withStatusCode(503));
+        createMockUploadResponse();
+        mockValidGoogleCredentials();
+        String runId = finishedRunId();
+        // two entries per batch, the last one is in the second batch
+        spoolEntry("http://localhost:1080", "13", runId);
+        spoolEntry("http://localhost:1080", "13", runId);
+        spoolEntry("http://localhost:1080", "12", runId);
+
+        ExtensionList.lookupSingleton(ChecksSpoolDrainer.class).execute(StreamTaskListener.fromStdout());
+
+        // the throttled entries wait for the next run, the one after them was still sent
+        for (ChecksSpool.Entry entry : ChecksSpool.get().list()) {
+            if (entry.getAppId().equals("13")) {
+                Assert.assertEquals(1, entry.getAttempts());
+                Assert.assertNull(entry.getOperationId());
+            } else {
+                Assert.assertEquals("123", entry.getOperationId());
+            }
+        }
+        Assert.assertEquals(3, ChecksSpool.get().list().size());
+    }
+
+    @Test
+    public void testDrainerStopsWhileUnreachable() throws Exception {
+        HttpRequest uploadRequest = createMockUploadResponse();
+        mockValidGoogleCredentials();
+        String runId = finishedRunId();
+        // nothing listens there, and the last entry is in the second batch
+        spoolEntry("http://localhost:1", "13", runId);
+        spoolEntry("http://localhost:1", "13", runId);
+        spoolEntry("http://localhost:1080", "12", runId);
+
+        ExtensionList.lookupSingleton(ChecksSpoolDrainer.class).execute(StreamTaskListener.fromStdout());
+
+        for (ChecksSpool.Entry entry : ChecksSpool.get().list()) {
+            if (entry.getAppId().equals("13")) {
+                Assert.assertEquals(1, entry.getAttempts());
+            } else {
+                Assert.assertEquals(0, entry.getAttempts());
+                Assert.assertNull(entry.getOperationId());
+            }
+        }
+        mockServer.verify(uploadRequest, VerificationTimes.exactly(0));
+    }
+
+    @Test
+    public void testUploadArchivedArtifact() throws Exception {
+        createMockUploadResponse();
+        createMockOperationResponse();
+        createMockReportResponse("/v1alpha/accounts/1/apps/12/reports/123", "{\"checks\": []}", 200);
+
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class);
+        String script = "node {\n" +
+                "  writeFile file: 'out/app.apk', text: 'archived binary'\n" +
+                "  archiveArtifacts 'out/app.apk'\n" +
+                "}\n" +
+                "uploadToChecks(" +
+                "baseUrl: 'http://localhost:1080'," +
+                "credentialsId: 'checks-service-account-content'," +
+                "projectId: 'checks-upload'," +
+                "accountId: '1'," +
+                "appId: '12'," +
+                "artifactPath: 'out/app.apk'," +
+                ")";
+        job.setDefinition(new CpsFlowDefinition(script, true));
+        mockValidGoogleCredentials();
+        WorkflowRun run = jenkins.buildAndAssertSuccess(job);
+
+        jenkins.assertLogContains("Uploading artifact", run);
+        jenkins.assertLogContains("Uploaded 15 bytes", run);
+        mockServer.verify(request().withPath("/upload/v1alpha/accounts/1/apps/12/reports:analyzeUpload").withBody("archived binary"));
+    }
+
+    @Test
+    public void testUploadFromLabelledAgent() throws Exception {
+        createMockUploadResponse();
+        createMockOperationResponse();
+        createMockReportResponse("/v1alpha/accounts/1/apps/12/reports/123", "{\"checks\": []}", 200);
+        jenkins.createOnlineSlave(Label.get("egress"));
+
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class);
+        String script = "node {\n" +
+                "  writeFile file: 'out/app.apk', text: 'archived binary'\n" +
+                "  archiveArtifacts 'out/app.apk'\n" +
+                "}\n" +
+                "uploadToChecks(" +
+                "baseUrl: 'http://localhost:1080'," +
+                "credentialsId: 'checks-service-account-content'," +
+                "projectId: 'checks-upload'," +
+                "accountId: '1'," +
+                "appId: '12'," +
+                "artifactPath: 'out/app.apk'," +
+                "uploadLabel: 'egress'," +
+                ")\n" +
+                "uploadToChecks(" +
+                "baseUrl: 'http://localhost:1080'," +
+                "credentialsId: 'checks-service-account-content'," +
+                "projectId: 'checks-upload'," +
+                "accountId: '1'," +
+                "appId: '12'," +
+                "binaryPath: \"" + tmpApkFile.getAbsolutePath() + "\"," +
+                "uploadLabel: 'egress'," +
+                ")";
+        job.setDefinition(new CpsFlowDefinition(script, true));
+        mockValidGoogleCredentials();
+        GoogleChecksConfiguration.get().setUploadNodesLabel("egress");
+        WorkflowRun run = jenkins.buildAndAssertSuccess(job);
+
+        jenkins.assertLogContains("Uploading from slave0, matching egress", run);
+        jenkins.assertLogContains("The binary was streamed to the node", run);
+        // the agent runs on the same machine, it sees the binary of the controller
+        jenkins.assertLogContains("The binary was read from the shared storage of the node", run);
+        mockServer.verify(request().withPath("/upload/v1alpha/accounts/1/apps/12/reports:analyzeUpload").withBody("archived binary"));
+    }
+
+    @Test
+    public void testUploadWithoutMatchingAgent() throws Exception {
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class);
+        String script = "uploadToChecks(" +
+                "baseUrl: 'http://localhost:1080'," +
+                "credentialsId: 'checks-service-account-content'," +
+                "projectId: 'checks-upload'," +
+                "accountId: '1'," +
+                "appId: '12'," +
+                "binaryPath: \"" + tmpApkFile.getAbsolutePath() + "\"," +
+                "uploadLabel: 'egress'," +
+                ")";
+        job.setDefinition(new CpsFlowDefinition(script, true));
+        mockValidGoogleCredentials();
+        GoogleChecksConfiguration.get().setUploadNodesLabel("egress");
+        WorkflowRun run = jenkins.assertBuildStatus(Result.FAILURE, job.scheduleBuild2(0));
+        jenkins.assertLogContains("No online node allowed to upload (egress) matches uploadLabel 'egress'", run);
+    }
+
+    @Test
+    public void testUploadOnlyFromAllowedAgents() throws Exception {
+        // the agent gets the access token, the pipeline can't pick any agent it controls
+        jenkins.createOnlineSlave(Label.get("egress"));
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class);
+        String script = "uploadToChecks(" +
+                "baseUrl: 'http://localhost:1080'," +
+                "credentialsId: 'checks-service-account-content'," +
+                "projectId: 'checks-upload'," +
+                "accountId: '1'," +
+                "appId: '12'," +
+                "binaryPath: \"" + tmpApkFile.getAbsolutePath() + "\"," +
+                "uploadLabel: 'egress'," +
+                ")";
+        job.setDefinition(new CpsFlowDefinition(script, true));
+        mockValidGoogleCredentials();
+        WorkflowRun run = jenkins.assertBuildStatus(Result.FAILURE, job.scheduleBuild2(0));
+        jenkins.assertLogContains("uploadLabel can't be used: no node is allowed to upload", run);
+
+        GoogleChecksConfiguration.get().setUploadNodesLabel("trusted");
+        run = jenkins.assertBuildStatus(Result.FAILURE, job.scheduleBuild2(0));
+        jenkins.assertLogContains("No online node allowed to upload (trusted) matches uploadLabel 'egress'", run);
+    }
+
+    @Test
+    public void testSessionSharedByParallelBranches() throws Exception {
+        createMockUploadResponse();
+        createMockOperationResponse();
+        createMockReportResponse("/v1alpha/accounts/1/apps/12/reports/123", "{\"checks\": []}", 200);
+
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class);
+        String upload = "uploadToChecks(appId: '12', binaryPath: \"" + tmpApkFile.getAbsolutePath() + "\")";
+        String script = "withGoogleChecks(" +
+                "baseUrl: 'http://localhost:1080'," +
+                "credentialsId: 'checks-service-account-content'," +
+                "projectId: 'checks-upload'," +
+                "accountId: '1'," +
+                ") {\n" +
+                "  parallel a: { " + upload + " }, b: { " + upload + " }, c: { " + upload + " }\n" +
+                "}";
+        job.setDefinition(new CpsFlowDefinition(script, true));
+        GoogleCredentialsHelper credentials = mockValidGoogleCredentials();
+        WorkflowRun run = jenkins.buildAndAssertSuccess(job);
+
+        jenkins.assertLogContains("Opened a Google Checks session for projectId=checks-upload accountId=1", run);
+        // once for the block, the uploads reuse its token
+        verify(credentials, times(1)).authenticate(anyString(), any(Run.class));
+        mockServer.verify(request().withPath("/upload/v1alpha/accounts/1/apps/12/reports:analyzeUpload"), VerificationTimes.exactly(3));
+        Assert.assertEquals(0, ChecksSession.getOpenSessions());
+    }
+
+    @Test
+    public void testReturnsResult() throws Exception {
+        createMockUploadResponse();
+        createMockOperationResponse();
+        String report = "{\"checks\": [{ \"type\": \"DATA_SAFETY\", \"severity\": \"PRIORITY\", \"state\": \"PASSED\"}," +
+                "{ \"type\": \"PERMISSIONS\", \"severity\": \"POTENTIAL\", \"state\": \"FAILED\"}]}";
+        HttpRequest reportRequest = createMockReportResponse("/v1alpha/accounts/1/apps/12/reports/123", report, 200);
+
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class);
+        String script = "def result = uploadToChecks(" +
+                "baseUrl: 'http://localhost:1080'," +
+                "credentialsId: 'checks-service-account-content'," +
+                "projectId: 'checks-upload'," +
+                "accountId: '1'," +
+                "appId: '12'," +
+                "binaryPath: \"" + tmpApkFile.getAbsolutePath() + "\"," +
+                ")\n" +
+                "echo \"passed=${result.passed} total=${result.total} potential=${result.failedBySeverity.POTENTIAL} failed=${result.countByState.FAILED}\"\n" +
+                "echo \"first=${result.checks[0].type} report=${result.reportName}\"";
+        job.setDefinition(new CpsFlowDefinition(script, true));
+        mockValidGoogleCredentials();
+        WorkflowRun run = jenkins.buildAndAssertSuccess(job);
+
+        jenkins.assertLogContains("passed=true total=2 potential=1 failed=1", run);
+        jenkins.assertLogContains("first=DATA_SAFETY report=accounts/1/apps/12/reports/123", run);
+        // the checks come from the cache, not from the API again
+        mockServer.verify(reportRequest, VerificationTimes.exactly(1));
+    }
+
+    @Test
+    public void testTimeoutCancelsOperation() throws Exception {
+        createMockUploadResponse();
+        HttpRequest cancelRequest = createMockResponse("/v1alpha/accounts/1/apps/12/operations/123:cancel", "{}", 200);
+        createMockResponse("/v1alpha/accounts/1/apps/12/operations/123", "{\"name\": \"accounts/1/apps/12/operations/123\", \"done\": false}", 200);
+
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class);
+        String script = "uploadToChecks(" +
+                "baseUrl: 'http://localhost:1080'," +
+                "credentialsId: 'checks-service-account-content'," +
+                "projectId: 'checks-upload'," +
+                "accountId: '1'," +
+                "appId: '12'," +
+                "binaryPath: \"" + tmpApkFile.getAbsolutePath() + "\"," +
+                "timeoutMinutes: 1," +
+                ")";
+
+        job.setDefinition(new CpsFlowDefinition(script, true));
+        mockValidGoogleCredentials();
+        int interval = AbstractChecksReportStepExecution.CHECK_OPERATION_INTERVAL;
+        AbstractChecksReportStepExecution.CHECK_OPERATION_INTERVAL = 1;
+        // times out after 3 seconds instead of the minute asked for
+        System.setProperty(AbstractChecksReportStepExecution.class.getName() + ".timeoutMillis", "3000");
+        try {
+            WorkflowRun run = jenkins.assertBuildStatus(Result.FAILURE, job.scheduleBuild2(0));
+            jenkins.assertLogContains("Timed out after 3 second(s) waiting for operationId=123, cancelling it", run);
+        } finally {
+            AbstractChecksReportStepExecution.CHECK_OPERATION_INTERVAL = interval;
+            System.clearProperty(AbstractChecksReportStepExecution.class.getName() + ".timeoutMillis");
+        }
+        mockServer.verify(cancelRequest.withMethod("POST"));
+        Assert.assertTrue(ChecksOperationTracker.get().getOperations().isEmpty());
+    }
+
+    @Test
+    public void testPublishChecks() throws Exception {
+        createMockUploadResponse();
+        createMockOperationResponse();
+        String report = "{\"checks\": [{ \"type\": \"DATA_SAFETY\", \"severity\": \"PRIORITY\", \"state\": \"FAILED\"}," +
+                "{ \"type\": \"PERMISSIONS\", \"severity\": \"POTENTIAL\", \"state\": \"PASSED\"}]}";
+        createMockReportResponse("/v1alpha/accounts/1/apps/12/reports/123", report, 200);
+
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class);
+        String script = "uploadToChecks(" +
+                "baseUrl: 'http://localhost:1080'," +
+                "credentialsId: 'checks-service-account-content'," +
+                "projectId: 'checks-upload'," +
+                "accountId: '1'," +
+                "appId: '12'," +
+                "binaryPath: \"" + tmpApkFile.getAbsolutePath() + "\"," +
+                "failOn: 'ALL'," +
+                "publishChecks: true," +
+                ")";
+
+        job.setDefinition(new CpsFlowDefinition(script, true));
+        mockValidGoogleCredentials();
+        jenkins.assertBuildStatus(Result.FAILURE, job.scheduleBuild2(0));
+
+        RecordingChecksPublisherFactory factory = ExtensionList.lookupSingleton(RecordingChecksPublisherFactory.class);
+        Assert.assertTrue(factory.completed.await(10, TimeUnit.SECONDS));
+        // the progress updates are published slowly, they must all be sent before the conclusion and none after it
+        List<ChecksDetails> published = factory.published;
+        Assert.assertTrue(published.size() >= 2);
+        Assert.assertEquals(ChecksStatus.IN_PROGRESS, published.get(0).getStatus());
+        for (ChecksDetails progress : published.subList(0, published.size() - 1)) {
+            Assert.assertNotEquals(ChecksStatus.COMPLETED, progress.getStatus());
+        }
+        ChecksDetails completed = published.get(published.size() - 1);
+        Assert.assertEquals(ChecksStatus.COMPLETED, completed.getStatus());
+        Assert.assertEquals(ChecksConclusion.FAILURE, completed.getConclusion());
+        Assert.assertEquals(Optional.of("Google Checks (12)"), completed.getName());
+        List<ChecksAnnotation> annotations = completed.getOutput().get().getChecksAnnotations();
+        Assert.assertEquals(1, annotations.size());
+        Assert.assertEquals(Optional.of("DATA_SAFETY"), annotations.get(0).getTitle());
+        Assert.assertEquals(ChecksAnnotation.ChecksAnnotationLevel.FAILURE, annotations.get(0).getAnnotationLevel());
+        Assert.assertTrue(completed.getOutput().get().getSummary().get().contains("1 of 2 checks failed."));
+    }
+
+    @TestExtension("testPublishChecks")
+    public static class RecordingChecksPublisherFactory extends ChecksPublisherFactory {
+        final List<ChecksDetails> published = new CopyOnWriteArrayList<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+
+        @Override
+        protected Optional<ChecksPublisher> createPublisher(Run<?, ?> run, TaskListener listener) {
+            return Optional.of(new ChecksPublisher() {
+                @Override
+                public void publish(ChecksDetails details) {
+                    if (details.getStatus() != ChecksStatus.COMPLETED) {
+                        // a slow SCM API, so that a concurrent conclusion would overtake the progress
+                        try {
+                            Thread.sleep(500);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    published.add(details);
+                    if (details.getStatus() == ChecksStatus.COMPLETED) {
+                        completed.countDown();
+                    }
+                }
+            });
+        }
+    }
+
+    private String finishedRunId() throws Exception {
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class);
+        job.setDefinition(new CpsFlowDefinition("echo 'built'", true));
+        return jenkins.buildAndAssertSuccess(job).getExternalizableId();
+    }
+
+    private void spoolEntry(String baseUrl, String appId, String runId) throws Exception {
+        ChecksSpool.get().spool(new ChecksSpool.Entry(baseUrl, "checks-upload", "1", appId, "checks-service-account-content", runId,
+                "app.apk", null, null), tmpApkFile.toPath());
+        // entries are drained in the order of their spooling time
+        Thread.sleep(2);
+    }
+
     private void storeMockGoogleCredentialsHelperManager(GoogleCredentialsHelper googleCredentialsHelper) throws Exception {
         GoogleCredentialsHelperFactory factory = GoogleCredentialsHelperFactory.getInstance();
         // override GoogleCredentialsHelper with our mocked instance
@@ -218,13 +709,13 @@ public class UploadToChecksStepIntegrationTest {
 
     private GoogleCredentialsHelper mockValidGoogleCredentials() throws Exception {
         GoogleCredentialsHelper mocked = mock(GoogleCredentialsHelper.class);
-        when(mocked.authenticate(anyString())).thenReturn("fake token");
+        when(mocked.authenticate(anyString(), any(Run.class))).thenReturn("fake token");
         storeMockGoogleCredentialsHelperManager(mocked);
         return mocked;
     }
     private GoogleCredentialsHelper mockGoogleCredentialsWithMissingCredentialsId() throws Exception {
         GoogleCredentialsHelper mocked = mock(GoogleCredentialsHelper.class);
-        when(mocked.authenticate(null)).thenThrow(new IllegalArgumentException("You must provide initialized credentials id (content of your serviceaccount.json)"));
+        when(mocked.authenticate(isNull(), any(Run.class))).thenThrow(new IllegalArgumentException("You must provide initialized credentials id (content of your serviceaccount.json)"));
         storeMockGoogleCredentialsHelperManager(mocked);
         return mocked;
     }